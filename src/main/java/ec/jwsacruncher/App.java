@@ -17,16 +17,43 @@
 package ec.jwsacruncher;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import ec.demetra.workspace.WorkspaceItem;
 import ec.demetra.workspace.file.FileWorkspace;
+import ec.jwsacruncher.core.CalendarCache;
+import ec.jwsacruncher.core.Checkpoint;
+import ec.jwsacruncher.core.Compression;
 import ec.jwsacruncher.core.FileRepository;
+import ec.jwsacruncher.core.JfrEvents;
+import ec.jwsacruncher.core.ResultProjection;
+import ec.jwsacruncher.core.SaItemFilter;
+import ec.jwsacruncher.core.SaItems;
+import ec.jwsacruncher.core.SharedEstimations;
+import ec.jwsacruncher.core.TsDataBuffer;
+import ec.jwsacruncher.core.TsDataCache;
+import ec.jwsacruncher.core.TsDataStore;
+import ec.jwsacruncher.core.TsSnapshot;
+import ec.jwsacruncher.core.WarmStart;
+import ec.jwsacruncher.batch.BundleCompressor;
+import ec.jwsacruncher.batch.CpuBudget;
+import ec.jwsacruncher.batch.CrunchMonitor;
 import ec.jwsacruncher.batch.SaBatchProcessor;
+import ec.jwsacruncher.batch.SaExecutors;
 import ec.jwsacruncher.batch.SaBatchInformation;
+import ec.jwsacruncher.batch.StreamingMatrixOutput;
+import ec.jwsacruncher.batch.SaBatchReport;
+import ec.jwsacruncher.batch.ISaBundleJournal;
+import ec.jwsacruncher.batch.ISaItemListener;
 import ec.tss.ITsProvider;
 import ec.tss.TsFactory;
+import ec.satoolkit.ISaSpecification;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.satoolkit.x13.X13Specification;
 import ec.tss.sa.EstimationPolicyType;
 import ec.tss.sa.ISaDiagnosticsFactory;
+import ec.tss.sa.ISaOutputFactory;
 import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
 import ec.tss.sa.SaManager;
 import ec.tss.sa.SaProcessing;
 import ec.tss.sa.output.BasicConfiguration;
@@ -39,12 +66,12 @@ import ec.tss.tsproviders.TsProviders;
 import ec.tstoolkit.algorithm.ProcessingContext;
 import ec.tstoolkit.design.VisibleForTesting;
 import ec.tstoolkit.information.InformationMapping;
-import ec.tstoolkit.information.InformationSet;
 import ec.tstoolkit.timeseries.calendars.GregorianCalendarManager;
 import ec.tstoolkit.timeseries.regression.ITsVariable;
 import ec.tstoolkit.timeseries.regression.TsVariables;
 import ec.tstoolkit.utilities.IDynamicObject;
 import ec.tstoolkit.utilities.Paths;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -52,8 +79,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import picocli.CommandLine;
@@ -73,7 +107,17 @@ public final class App {
             } else {
                 Args config = ArgsDecoder2.decode(args);
                 if (config != null) {
-                    process(config.getWorkspace(), config.getConfig());
+                    if (DistributedCrunch.isEnabled(config.getConfig())) {
+                        DistributedCrunch.process(config.getWorkspaces(), config.getConfig());
+                    } else if (WatchMode.isEnabled(config.getConfig())) {
+                        WatchMode.process(config.getWorkspaces(), config.getConfig());
+                    } else if (config.getWorkspaces().size() == 1) {
+                        if (!process(config.getWorkspaces().get(0), config.getConfig())) {
+                            System.exit(-1);
+                        }
+                    } else if (!process(config.getWorkspaces(), config.getConfig())) {
+                        System.exit(-1);
+                    }
                 }
             }
         } catch (IOException | IllegalArgumentException ex) {
@@ -97,63 +141,700 @@ public final class App {
         WsaConfig.write(configFile, config);
     }
 
+    /**
+     * Processes a workspace.
+     *
+     * @param workspace
+     * @param config
+     * @return false if the failure threshold has been exceeded
+     * @throws IllegalArgumentException
+     * @throws IOException
+     */
     @VisibleForTesting
-    static void process(@NonNull File workspace, @NonNull WsaConfig config) throws IllegalArgumentException, IOException {
+    static boolean process(@NonNull File workspace, @NonNull WsaConfig config) throws IllegalArgumentException, IOException {
         Stopwatch stopwatch = Stopwatch.createStarted();
 
-        loadResources();
-        enableDiagnostics(config.Matrix);
+        SaBatchReport report;
+        try (TsDataCache cache = loadResources(config);
+                SaExecutors executors = newExecutors(config);
+                Closeable snapshot = openSnapshot(cache, config, workspace);
+                FileWorkspace ws = FileWorkspace.open(workspace.toPath())) {
+            enableDiagnostics(config.Matrix);
+            CrunchMonitor.start();
+            report = process(ws, ProcessingContext.getActiveContext(), config, getOutputFolder(config, ws), executors);
+            completeSnapshot(cache, config, null);
+        }
+
+        System.out.println("Total processing time: " + stopwatch.elapsed(TimeUnit.SECONDS) + "s");
+        return isAccepted(config, report);
+    }
 
-        try (FileWorkspace ws = FileWorkspace.open(workspace.toPath())) {
-            process(ws, ProcessingContext.getActiveContext(), config);
+    /**
+     * Processes several workspaces in the same JVM. Each workspace gets its
+     * own processing context and output sub-folder; a failure in one
+     * workspace is reported and does not stop the others.
+     *
+     * @param workspaces
+     * @param config
+     * @return true if all the workspaces have been processed
+     */
+    @VisibleForTesting
+    static boolean process(@NonNull List<File> workspaces, @NonNull WsaConfig config) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        Map<File, String> report = new LinkedHashMap<>();
+        Map<File, String> names = WorkspaceBatch.getOutputNames(workspaces);
+        int nfailed = 0;
+        try (TsDataCache cache = loadResources(config);
+                SaExecutors executors = newExecutors(config)) {
+            enableDiagnostics(config.Matrix);
+            CrunchMonitor monitor = CrunchMonitor.start();
+            for (File workspace : WorkspaceBatch.sortBySize(workspaces)) {
+                if (monitor.isCancelled()) {
+                    report.put(workspace, "cancelled");
+                    nfailed++;
+                    continue;
+                }
+                Stopwatch current = Stopwatch.createStarted();
+                System.out.println("Processing workspace " + workspace);
+                try (Closeable snapshot = openSnapshot(cache, config, workspace);
+                        FileWorkspace ws = FileWorkspace.open(workspace.toPath())) {
+                    ProcessingContext context = new ProcessingContext();
+                    ProcessingContext.setActiveContext(context);
+                    File output = config.Output != null
+                            ? new File(config.Output, names.get(workspace))
+                            : getOutputFolder(config, ws);
+                    SaBatchReport outcomes = process(ws, context, config, output, executors);
+                    completeSnapshot(cache, config, null);
+                    if (isAccepted(config, outcomes)) {
+                        report.put(workspace, "processed in " + current.elapsed(TimeUnit.SECONDS) + "s");
+                    } else {
+                        report.put(workspace, "failed: " + outcomes.getSummary());
+                        nfailed++;
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    reportException(ex);
+                    report.put(workspace, "failed: " + ex.getClass().getSimpleName() + ": " + ex.getMessage());
+                    nfailed++;
+                }
+            }
+        } catch (IOException ex) {
+            // the cache could not be released
+            reportException(ex);
         }
 
+        report.forEach((workspace, msg) -> System.out.println(workspace + ": " + msg));
+        System.out.println((workspaces.size() - nfailed) + "/" + workspaces.size() + " workspaces processed");
         System.out.println("Total processing time: " + stopwatch.elapsed(TimeUnit.SECONDS) + "s");
+        return nfailed == 0;
+    }
+
+    private static SaBatchReport process(FileWorkspace ws, ProcessingContext context, WsaConfig config, File output, SaExecutors executors) throws IOException {
+        return process(ws, context, config, output, executors, null, null);
+    }
+
+    /**
+     * Processes an open workspace.
+     *
+     * @param ws
+     * @param context
+     * @param config
+     * @param output
+     * @param executors
+     * @param loaded Receives the loaded multi-processings, which stay in
+     * memory after their processing (may be null)
+     * @param cruncher The embedding cruncher, which receives the processed
+     * items and may cancel the processing (may be null)
+     * @return
+     * @throws IOException
+     */
+    static SaBatchReport process(FileWorkspace ws, ProcessingContext context, WsaConfig config, File output, SaExecutors executors, Map<WorkspaceItem, SaProcessing> loaded, Cruncher cruncher) throws IOException {
+        try (Closeable recording = startRecording(config, output)) {
+            return processWorkspace(ws, context, config, output, executors, loaded, cruncher);
+        }
     }
 
-    private static void process(FileWorkspace ws, ProcessingContext context, WsaConfig config) throws IOException {
-        Map<WorkspaceItem, GregorianCalendarManager> cal = FileRepository.loadAllCalendars(ws, context);
+    private static SaBatchReport processWorkspace(FileWorkspace ws, ProcessingContext context, WsaConfig config, File output, SaExecutors executors, Map<WorkspaceItem, SaProcessing> loaded, Cruncher cruncher) throws IOException {
+        // invalid compressions are reported before the processing
+        Compression.parse(config.SeriesCompression);
+        Compression.parse(config.MatrixCompression);
+        SaBatchReport report = new SaBatchReport();
+        SaItemFilter filter = getFilter(config);
+        Object event = JfrEvents.begin(JfrEvents.Type.WORKSPACE);
+        Map<WorkspaceItem, GregorianCalendarManager> cal = FileRepository.loadAllCalendars(ws, context, newCalendarCache(config));
         Map<WorkspaceItem, TsVariables> vars = FileRepository.loadAllVariables(ws, context);
-        Map<WorkspaceItem, SaProcessing> sa = FileRepository.loadAllSaProcessing(ws, context);
+        Map<WorkspaceItem, SaProcessing> sa = FileRepository.loadAllSaProcessing(ws, context, filter::acceptsProcessing);
+        JfrEvents.commit(event, ws.getFile());
+        if (loaded != null) {
+            loaded.putAll(sa);
+        }
 
         applyFilePaths(getFilePaths(config));
         if (config.refresh) {
             refreshVariables(ws, vars);
         }
         if (sa.isEmpty()) {
-            return;
+            return report;
+        }
+        if (isRevision(config)) {
+            revise(sa, filter, config, output, executors, report, cruncher);
+            return report;
         }
-        applyOutputConfig(config, ws.getRootFolder());
+        List<ISaOutputFactory> outputs = applyOutputConfig(config, output);
+        Checkpoint checkpoint = isCheckpoint(config) ? new Checkpoint(output.toPath().resolve(CHECKPOINT)) : null;
+        if (checkpoint != null && !Boolean.TRUE.equals(config.resume)) {
+            checkpoint.clear();
+        }
+        SharedEstimations shared = Boolean.TRUE.equals(config.deduplicate) ? new SharedEstimations() : null;
         for (Entry<WorkspaceItem, SaProcessing> o : sa.entrySet()) {
-            process(ws, o.getKey(), o.getValue(), config.getPolicy(), config.BundleSize);
+            if (isCancelled(cruncher)) {
+                break;
+            }
+            if (checkpoint != null && checkpoint.isDone(o.getKey().getId())) {
+                System.out.println("Skipping " + o.getKey().getId() + " (already saved)");
+                continue;
+            }
+            process(ws, o.getKey(), o.getValue(), filter, config, output, outputs, executors, report, checkpoint, shared, cruncher);
+        }
+        if (shared != null && shared.getCount() > 0) {
+            System.out.println(shared.getCount() + " estimations avoided (identical series)");
+        }
+        if (checkpoint != null) {
+            // the list of saved multi-processings is kept so that resuming a completed run does nothing
+            checkpoint.clearBundles();
+        }
+        if (report.size() > 0) {
+            report.write(output.toPath().resolve(OUTCOMES));
+            System.out.println(report.getSummary());
         }
+        return report;
+    }
+
+    /**
+     * Starts the flight recording of the processing of a workspace, as
+     * requested by the configuration.
+     *
+     * @param config
+     * @param output
+     * @return The recording, written in [output]/jwsacruncher.jfr when it is
+     * closed, or null
+     */
+    static Closeable startRecording(WsaConfig config, File output) {
+        if (!Boolean.TRUE.equals(config.jfr)) {
+            return null;
+        }
+        if (!output.exists()) {
+            output.mkdirs();
+        }
+        try {
+            return JfrEvents.start(output.toPath().resolve(JFR));
+        } catch (UnsupportedOperationException ex) {
+            log.log(Level.WARNING, ex.getMessage(), ex);
+            System.out.println("Flight recording not available in this runtime");
+            return null;
+        }
+    }
+
+    static boolean isStreaming(WsaConfig config) {
+        return Boolean.TRUE.equals(config.streaming);
+    }
+
+    /**
+     * Checks the failure rate of a crunch against the threshold of the
+     * configuration.
+     *
+     * @param config
+     * @param report
+     * @return
+     */
+    static boolean isAccepted(WsaConfig config, SaBatchReport report) {
+        return config.FailureThreshold == null || report.getFailureRate() <= config.FailureThreshold;
     }
 
-    private static void process(FileWorkspace ws, WorkspaceItem item, SaProcessing processing, EstimationPolicyType policy, int bundleSize) throws IOException {
+    private static void process(FileWorkspace ws, WorkspaceItem item, SaProcessing processing, SaItemFilter filter, WsaConfig config, File output, List<ISaOutputFactory> outputs, SaExecutors executors, SaBatchReport report, Checkpoint checkpoint, SharedEstimations shared, Cruncher cruncher) throws IOException {
         Stopwatch stopwatch = Stopwatch.createStarted();
 
-        System.out.println("Refreshing data");
-        processing.refresh(policy, false);
-        SaBatchInformation info = new SaBatchInformation(processing.size() > bundleSize ? bundleSize : 0);
-        info.setName(item.getId());
-        info.setItems(processing);
-        SaBatchProcessor processor = new SaBatchProcessor(info, new ConsoleFeedback());
-        processor.process();
+        List<SaItem> selection = select(item, processing, filter);
+        if (selection != null && selection.isEmpty()) {
+            return;
+        }
+        crunch(processing, selection, item.getId(), config, output, outputs, executors, report, checkpoint != null ? checkpoint.getJournal(item.getId(), processing) : null, shared, cruncher);
+        if (isCancelled(cruncher)) {
+            // a partially processed multi-processing is not saved
+            System.out.println(item.getId() + " cancelled");
+            return;
+        }
 
         System.out.println("Saving new processing...");
         FileRepository.storeSaProcessing(ws, item, processing);
+        if (checkpoint != null) {
+            checkpoint.markDone(item.getId());
+        }
 
         System.out.println("Processing time: " + stopwatch.elapsed(TimeUnit.SECONDS) + "s");
     }
 
-    private static void loadResources() {
+    /**
+     * Selects the items of a multi-processing that match the filter.
+     *
+     * @param item
+     * @param processing
+     * @param filter
+     * @return The selected items (possibly empty) or null if all the items
+     * are selected
+     */
+    private static List<SaItem> select(WorkspaceItem item, SaProcessing processing, SaItemFilter filter) {
+        if (!filter.isItemFilter()) {
+            return null;
+        }
+        List<SaItem> all = SaItems.toList(processing);
+        List<SaItem> selection = Arrays.stream(filter.select(all)).mapToObj(all::get).collect(Collectors.toList());
+        if (selection.isEmpty()) {
+            System.out.println("No matching series in " + item.getId());
+        } else {
+            System.out.println(selection.size() + "/" + all.size() + " series selected in " + item.getId());
+        }
+        return selection;
+    }
+
+    /**
+     * Crunches the multi-processings of a workspace with several refreshing
+     * policies (revision analysis). For each multi-processing, the policies
+     * are applied in parallel on copies of the items, which share the loaded
+     * workspace and (through the data cache) the data of the series. The
+     * outputs and the outcomes of each policy are written in a sub-folder of
+     * the output named after the policy. The workspace is not saved.
+     *
+     * @param sa
+     * @param filter
+     * @param config
+     * @param output
+     * @param executors
+     * @param report The report that collects the outcomes of all the policies
+     * @param cruncher
+     * @throws IOException
+     */
+    private static void revise(Map<WorkspaceItem, SaProcessing> sa, SaItemFilter filter, WsaConfig config, File output, SaExecutors executors, SaBatchReport report, Cruncher cruncher) throws IOException {
+        List<WsaConfig> configs = new ArrayList<>();
+        List<File> folders = new ArrayList<>();
+        List<List<ISaOutputFactory>> outputs = new ArrayList<>();
+        List<SaBatchReport> reports = new ArrayList<>();
+        for (String policy : config.Policies) {
+            WsaConfig pconfig = config.withPolicy(policy);
+            File folder = getPolicyFolder(output, policy);
+            configs.add(pconfig);
+            folders.add(folder);
+            outputs.add(applyOutputConfig(pconfig, folder));
+            reports.add(new SaBatchReport());
+        }
+        // the crunches submit their items to the shared executors, so they run in their own threads
+        ExecutorService policies = Executors.newFixedThreadPool(configs.size(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("policy-%d").build());
+        try {
+            for (Entry<WorkspaceItem, SaProcessing> o : sa.entrySet()) {
+                if (isCancelled(cruncher)) {
+                    break;
+                }
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                String id = o.getKey().getId();
+                List<SaItem> selection = select(o.getKey(), o.getValue(), filter);
+                List<SaItem> items = selection != null ? selection : SaItems.toList(o.getValue());
+                if (items.isEmpty()) {
+                    continue;
+                }
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (int i = 0; i < configs.size(); ++i) {
+                    int pos = i;
+                    tasks.add(() -> {
+                        SaProcessing copy = new SaProcessing();
+                        items.forEach(copy::add);
+                        crunch(copy, null, id, configs.get(pos), folders.get(pos), outputs.get(pos), executors, reports.get(pos), null, null, cruncher);
+                        return null;
+                    });
+                }
+                for (Future<Void> future : policies.invokeAll(tasks)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        } else if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        throw new IOException(cause);
+                    }
+                }
+                System.out.println("Processing time of " + id + " (" + configs.size() + " policies): " + stopwatch.elapsed(TimeUnit.SECONDS) + "s");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Revision analysis interrupted", ex);
+        } finally {
+            policies.shutdown();
+        }
+        for (int i = 0; i < configs.size(); ++i) {
+            SaBatchReport preport = reports.get(i);
+            if (preport.size() > 0) {
+                preport.write(folders.get(i).toPath().resolve(OUTCOMES));
+                System.out.println(folders.get(i).getName() + ": " + preport.getSummary());
+            }
+            preport.getOutcomes().forEach(report::add);
+        }
+    }
+
+    /**
+     * @param cruncher The embedding cruncher (may be null)
+     * @return true if the run has been cancelled by the embedding cruncher or
+     * through JMX
+     */
+    static boolean isCancelled(Cruncher cruncher) {
+        return (cruncher != null && cruncher.isCancelled()) || CrunchMonitor.getInstance().isCancelled();
+    }
+
+    static boolean isRevision(WsaConfig config) {
+        return config.Policies != null && config.Policies.length > 0;
+    }
+
+    static File getPolicyFolder(File output, String policy) {
+        return new File(output, WsaConfig.toPolicy(policy).name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Refreshes and estimates the items of a multi-processing.
+     *
+     * @param processing
+     * @param selection The items to crunch or null to crunch all the items;
+     * the other items are left untouched
+     * @param name
+     * @param config
+     * @param output The output folder
+     * @param outputs
+     * @param executors
+     * @param report The report that collects the outcomes of the items (may
+     * be null)
+     * @param journal
+     * @param shared The items shared with the previous multi-processings (may
+     * be null)
+     * @param cruncher The embedding cruncher (may be null)
+     */
+    static void crunch(SaProcessing processing, List<SaItem> selection, String name, WsaConfig config, File output, List<ISaOutputFactory> outputs, SaExecutors executors, SaBatchReport report, ISaBundleJournal journal, SharedEstimations shared, Cruncher cruncher) throws IOException {
+        EstimationPolicyType policy = config.getPolicy();
+        int bundleSize = config.BundleSize;
+        System.out.println("Refreshing data");
+        List<SaItem> previous = isWarmStart(config) ? (selection != null ? selection : SaItems.toList(processing)) : null;
+        List<SaItem> items;
+        if (selection == null) {
+            processing.refresh(policy, false);
+            items = SaItems.toList(processing);
+        } else {
+            items = refresh(processing, selection, policy);
+        }
+        Map<SaItem, SaItem> coldItems = previous != null ? warmStart(processing, previous, items) : Collections.emptyMap();
+        if (shared != null) {
+            int n = shared.share(processing, items);
+            if (n > 0) {
+                System.out.println(n + " series already estimated in previous multi-processings");
+            }
+        }
+        SaBatchInformation info = new SaBatchInformation(items.size() > bundleSize ? bundleSize : 0);
+        info.setName(name);
+        info.setItems(items);
+        info.setOutputs(outputs);
+        info.setIoExecutor(executors.getIo());
+        info.setLazyData(Boolean.TRUE.equals(config.offHeap));
+        // the shared items must keep their results for the next multi-processings
+        // and the watched items for the next updates
+        boolean keep = shared != null || WatchMode.isEnabled(config);
+        info.setCompress(!keep);
+        SaBatchProcessor processor = new SaBatchProcessor(info, new ConsoleFeedback(), executors.getCompute());
+        processor.setJournal(journal);
+        processor.setReport(report);
+        processor.setMonitor(CrunchMonitor.getInstance());
+        processor.setCancelled(() -> isCancelled(cruncher));
+        CrunchMonitor.getInstance().startProcessing(name, items.size(), executors);
+        StreamingMatrixOutput matrix = null;
+        ResultProjection projection = ResultProjection.of(config.Matrix, config.TSMatrix);
+        if (isStreaming(config) && projection.hasItems()) {
+            // same files as the csv-matrix output
+            CsvMatrixOutputConfiguration matrixConfig = getCsvMatrixOutputConfiguration(projection, output);
+            matrix = new StreamingMatrixOutput(matrixConfig.getFolder(), matrixConfig.getFileName(), matrixConfig.getItems());
+        }
+        ISaItemListener listener = matrix;
+        if (cruncher != null) {
+            ISaItemListener callback = (index, item, results) -> cruncher.processed(name, item, results);
+            listener = listener != null ? listener.andThen(callback) : callback;
+        }
+        BundleCompressor compressor = newCompressor(config, output, executors);
+        if (compressor != null) {
+            // the files of a bundle are compressed once they are all written
+            listener = listener != null ? listener.andThen(compressor) : compressor;
+        }
+        processor.setItemListener(listener);
+        // the streamed values are extracted before the items are compressed
+        processor.setCompress(outputs.isEmpty() && !keep);
+        if (config.Timeout != null && config.Timeout > 0) {
+            processor.setTimeout(config.Timeout, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(config.fallback)) {
+                processor.setFallback(item -> {
+                    ISaSpecification spec = getFallbackSpecification(item.getEstimationSpecification());
+                    if (spec == null) {
+                        return null;
+                    }
+                    SaItem nitem = new SaItem(spec, item.getTs());
+                    processing.replace(item, nitem);
+                    return nitem;
+                });
+            }
+        }
+        if (!coldItems.isEmpty()) {
+            System.out.println(coldItems.size() + "/" + items.size() + " series initialised with their previous parameters");
+            processor.setColdStart(coldItems::get);
+        }
+        try {
+            processor.process();
+            // the failed warm starts and the items estimated on a copy have been replaced in the bundles
+            processor.getReplacements().forEach((item, nitem) -> {
+                processing.replace(item, nitem);
+                if (shared != null) {
+                    shared.replace(item, nitem);
+                }
+            });
+            // the initial values of the warm items are not saved
+            coldItems.forEach((warm, cold) -> {
+                SaItem item = processor.getReplacements().getOrDefault(warm, warm);
+                if (item != cold) {
+                    WarmStart.restore(item, cold);
+                }
+            });
+        } finally {
+            try {
+                if (matrix != null) {
+                    matrix.close();
+                }
+            } finally {
+                if (compressor != null) {
+                    compressor.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the compressor of the csv files of the bundles, as requested by
+     * the configuration.
+     *
+     * @param config
+     * @param output
+     * @param executors
+     * @return The compressor or null if the files are not compressed
+     */
+    static BundleCompressor newCompressor(WsaConfig config, File output, SaExecutors executors) {
+        Compression series = Compression.parse(config.SeriesCompression);
+        Compression matrix = Compression.parse(config.MatrixCompression);
+        if (series == Compression.NONE && matrix == Compression.NONE) {
+            return null;
+        }
+        return new BundleCompressor(output, series, matrix, MATRIX_PREFIX, executors.getCompute());
+    }
+
+    static boolean isWarmStart(WsaConfig config) {
+        return Boolean.TRUE.equals(config.warmStart) && config.getPolicy() == EstimationPolicyType.FreeParameters;
+    }
+
+    /**
+     * Replaces the refreshed items by their warm start (see WarmStart), in the
+     * list of items and in the processing.
+     *
+     * @param processing
+     * @param previous The items before the refresh
+     * @param items The refreshed items, in the same order
+     * @return The refreshed (cold) items, by warm item
+     */
+    private static Map<SaItem, SaItem> warmStart(SaProcessing processing, List<SaItem> previous, List<SaItem> items) {
+        Map<SaItem, SaItem> result = new HashMap<>();
+        for (int i = 0; i < items.size(); ++i) {
+            SaItem cold = items.get(i);
+            SaItem warm = WarmStart.of(previous.get(i), cold);
+            if (warm != null) {
+                processing.replace(cold, warm);
+                items.set(i, warm);
+                result.put(warm, cold);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the cheap specification used to retry the items that exceeded
+     * their time budget: RSA0 of the same method (no automatic model
+     * identification).
+     *
+     * @param spec
+     * @return
+     */
+    static ISaSpecification getFallbackSpecification(ISaSpecification spec) {
+        if (spec instanceof TramoSeatsSpecification) {
+            return TramoSeatsSpecification.RSA0;
+        } else if (spec instanceof X13Specification) {
+            return X13Specification.RSA0;
+        } else {
+            return null;
+        }
+    }
+
+    static List<SaItem> refresh(SaProcessing processing, List<SaItem> selection, EstimationPolicyType policy) {
+        SaProcessing tmp = new SaProcessing();
+        selection.forEach(tmp::add);
+        tmp.refresh(policy, false);
+        List<SaItem> result = SaItems.toList(tmp);
+        for (int i = 0; i < result.size(); ++i) {
+            if (result.get(i) != selection.get(i)) {
+                processing.replace(selection.get(i), result.get(i));
+            }
+        }
+        return result;
+    }
+
+    static SaExecutors newExecutors(WsaConfig config) {
+        int threads = CpuBudget.getThreads(config.Threads, config.CpuShare);
+        int priority = config.Priority != null ? Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, config.Priority)) : Thread.MIN_PRIORITY;
+        return SaExecutors.of(threads, priority, config.IoThreads != null ? config.IoThreads : 0, Boolean.TRUE.equals(config.virtualThreads));
+    }
+
+    static SaItemFilter getFilter(WsaConfig config) {
+        return SaItemFilter.of(config.Processings, config.Series, config.Sources, config.Monikers);
+    }
+
+    private static final String CHECKPOINT = ".checkpoint";
+    private static final String OUTCOMES = "outcomes.csv";
+    private static final String MATRIX_PREFIX = "demetra_m";
+    private static final String JFR = "jwsacruncher.jfr";
+
+    private static boolean isCheckpoint(WsaConfig config) {
+        return Boolean.TRUE.equals(config.checkpoint) || Boolean.TRUE.equals(config.resume);
+    }
+
+    /**
+     * Loads the providers and the processing factories.
+     *
+     * @param config
+     * @return The cache put in front of the providers or null
+     */
+    static TsDataCache loadResources(WsaConfig config) {
+        TsDataCache cache = newCache(config);
+        Supplier<TsDataCache> supplier = cache != null ? () -> cache : null;
+        loadResources(supplier);
+        return cache;
+    }
+
+    /**
+     * Loads the providers and the processing factories. The providers are put
+     * behind the caches of a supplier, which may change between the runs.
+     *
+     * @param cache The supplier of the current cache or null
+     */
+    static void loadResources(Supplier<TsDataCache> cache) {
         loadFileProperties();
-        ServiceLoader.load(ITsProvider.class).forEach(TsFactory.instance::add);
+        ServiceLoader.load(ITsProvider.class).forEach(o -> TsFactory.instance.add(cache != null ? TsDataCache.wrap(o, cache) : o));
         ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
         ServiceLoader.load(ISaDiagnosticsFactory.class).forEach(SaManager.instance::add);
         InformationMapping.updateAll(null);
     }
 
+    static TsDataCache newCache(WsaConfig config) {
+        boolean offHeap = Boolean.TRUE.equals(config.offHeap);
+        boolean snapshot = Boolean.TRUE.equals(config.snapshot) || Boolean.TRUE.equals(config.fromSnapshot);
+        // the policies of a revision analysis share the data of the series
+        boolean revision = isRevision(config);
+        if (!offHeap && !snapshot && !revision && (config.CacheSize == null || config.CacheSize <= 0)) {
+            return null;
+        }
+        TsDataStore store = config.CacheFolder != null
+                ? new TsDataStore(java.nio.file.Paths.get(config.CacheFolder), config.CacheTtl != null ? TimeUnit.SECONDS.toMillis(config.CacheTtl) : 0)
+                : null;
+        long size = config.CacheSize != null && config.CacheSize > 0 ? config.CacheSize : offHeap || revision ? DEFAULT_CACHE_SIZE : 0;
+        return new TsDataCache(size, offHeap ? new TsDataBuffer(java.nio.file.Paths.get(System.getProperty("java.io.tmpdir"))) : null, store);
+    }
+
+    private static final long DEFAULT_CACHE_SIZE = 1000000;
+
+    /**
+     * Creates the cache of the calendar regressors, shared by all the items of
+     * a workspace. The cache is disabled by default, since the calendars of
+     * the processing context are then replaced by proxies.
+     *
+     * @param config
+     * @return The cache or null if it is disabled
+     */
+    static CalendarCache newCalendarCache(WsaConfig config) {
+        return config.CalendarCacheSize != null && config.CalendarCacheSize > 0 ? new CalendarCache(config.CalendarCacheSize) : null;
+    }
+
+    /**
+     * Records the series of a workspace in its snapshot or serves them from
+     * it, as requested by the configuration.
+     *
+     * @param cache
+     * @param config
+     * @param workspace
+     * @return The resource that ends the recording (or the replay) of the
+     * snapshot
+     * @throws IOException
+     */
+    static Closeable openSnapshot(TsDataCache cache, WsaConfig config, File workspace) throws IOException {
+        Path file = getSnapshotFile(workspace);
+        if (cache != null && Boolean.TRUE.equals(config.fromSnapshot)) {
+            if (!Files.exists(file)) {
+                throw new IOException("Snapshot not found: " + file);
+            }
+            TsSnapshot snapshot = TsSnapshot.open(file);
+            System.out.println(snapshot.size() + " series read from " + file);
+            cache.setSnapshot(snapshot);
+            return () -> {
+                cache.setSnapshot(null);
+                snapshot.close();
+            };
+        } else if (cache != null && Boolean.TRUE.equals(config.snapshot)) {
+            TsSnapshot.Writer writer = new TsSnapshot.Writer(file);
+            cache.setRecorder(writer);
+            return () -> {
+                cache.setRecorder(null);
+                writer.close();
+                if (writer.isComplete()) {
+                    System.out.println(writer.size() + " series written in " + file);
+                } else {
+                    System.out.println("Snapshot not written (incomplete run): " + file);
+                }
+            };
+        } else {
+            return () -> {
+            };
+        }
+    }
+
+    /**
+     * Marks the snapshot that is being recorded as complete, so that it is
+     * published at the end of the run. A run that is cancelled, resumed or
+     * restricted to some items doesn't query all the series of the workspace,
+     * so it doesn't replace the snapshot (neither does a run that fails).
+     *
+     * @param cache
+     * @param config
+     * @param cruncher
+     */
+    static void completeSnapshot(TsDataCache cache, WsaConfig config, Cruncher cruncher) {
+        TsSnapshot.Writer writer = cache != null ? cache.getRecorder() : null;
+        if (writer != null && !isCancelled(cruncher) && !Boolean.TRUE.equals(config.resume) && getFilter(config).isAll()) {
+            writer.complete();
+        }
+    }
+
+    static Path getSnapshotFile(File workspace) {
+        return workspace.toPath().toAbsolutePath().resolveSibling(WorkspaceBatch.getBaseName(workspace) + SNAPSHOT);
+    }
+
+    private static final String SNAPSHOT = ".snapshot";
+
     private static void loadFileProperties() {
         String basedir = System.getProperty("basedir");
         if (basedir != null) {
@@ -168,11 +849,17 @@ public final class App {
         }
     }
 
-    private static void applyFilePaths(File[] paths) {
+    static void applyFilePaths(File[] paths) {
         TsProviders.all().filter(IFileLoader.class).forEach(o -> o.setPaths(paths));
     }
 
-    private static void applyOutputConfig(WsaConfig config, Path rootFolder) {
+    static File getOutputFolder(WsaConfig config, FileWorkspace ws) {
+        return config.Output != null
+                ? new File(config.Output)
+                : new File(Paths.concatenate(ws.getRootFolder().toAbsolutePath().toString(), "Output"));
+    }
+
+    static List<ISaOutputFactory> applyOutputConfig(WsaConfig config, File output) {
         if (config.ndecs != null) {
             BasicConfiguration.setDecimalNumber(config.ndecs);
         }
@@ -180,64 +867,51 @@ public final class App {
             BasicConfiguration.setCsvSeparator(config.csvsep.charAt(0));
         }
 
-        if (config.Output == null) {
-            config.Output = Paths.concatenate(rootFolder.toAbsolutePath().toString(), "Output");
-        }
-        File output = new File(config.Output);
         if (!output.exists()) {
             output.mkdirs();
         }
 
-        // TODO: apply instead of add
-        SaManager.instance.add(new CsvOutputFactory(getCsvOutputConfiguration(config)));
-        SaManager.instance.add(new CsvMatrixOutputFactory(getCsvMatrixOutputConfiguration(config)));
+        // outputs without any requested result are not created
+        ResultProjection projection = ResultProjection.of(config.Matrix, config.TSMatrix);
+        List<ISaOutputFactory> result = new ArrayList<>();
+        if (projection.hasSeries()) {
+            result.add(new CsvOutputFactory(getCsvOutputConfiguration(projection, config, output)));
+        }
+        if (projection.hasItems() && !isStreaming(config)) {
+            result.add(new CsvMatrixOutputFactory(getCsvMatrixOutputConfiguration(projection, output)));
+        }
+        return result;
     }
 
-    private static File[] getFilePaths(WsaConfig config) {
+    static File[] getFilePaths(WsaConfig config) {
         return config.Paths != null
                 ? Stream.of(config.Paths).map(File::new).toArray(File[]::new)
                 : new File[0];
     }
 
-    private static CsvOutputConfiguration getCsvOutputConfiguration(WsaConfig config) {
+    private static CsvOutputConfiguration getCsvOutputConfiguration(ResultProjection projection, WsaConfig config, File output) {
         CsvOutputConfiguration result = new CsvOutputConfiguration();
-        result.setFolder(new File(config.Output));
+        result.setFolder(output);
         result.setPresentation(config.getLayout());
-        result.setSeries(Arrays.asList(config.TSMatrix));
+        result.setSeries(projection.getSeries());
         return result;
     }
 
-    private static CsvMatrixOutputConfiguration getCsvMatrixOutputConfiguration(WsaConfig config) {
+    private static CsvMatrixOutputConfiguration getCsvMatrixOutputConfiguration(ResultProjection projection, File output) {
         CsvMatrixOutputConfiguration result = new CsvMatrixOutputConfiguration();
-        result.setFolder(new File(config.Output));
-        if (config.Matrix != null) {
-            result.setItems(Arrays.asList(config.Matrix));
+        result.setFolder(output);
+        if (projection.getItems() != null) {
+            result.setItems(projection.getItems());
         }
         return result;
     }
 
-    private static final String DIAGNOSTICS = "diagnostics";
-
-    private static void enableDiagnostics(String[] items) {
-        // step 1. We retrieve the used diagnostics
-        Set<String> diags = new HashSet<>();
-        if (items != null) {
-            for (int i = 0; i < items.length; ++i) {
-                if (InformationSet.isPrefix(items[i], DIAGNOSTICS)) {
-                    int start = DIAGNOSTICS.length() + 1;
-                    int end = items[i].indexOf(InformationSet.SEP, start);
-                    if (end > 0) {
-                        String diag = items[i].substring(start, end);
-                        diags.add(diag);
-                    }
-                }
-            }
-        }
-        // step 2. Enable/disables diag
+    static void enableDiagnostics(String[] items) {
+        Set<String> diags = ResultProjection.of(items, null).getDiagnostics();
         SaManager.instance.getDiagnostics().forEach(d -> d.setEnabled(diags.contains(d.getName().toLowerCase())));
     }
 
-    private static void refreshVariables(FileWorkspace ws, Map<WorkspaceItem, TsVariables> vars) {
+    static void refreshVariables(FileWorkspace ws, Map<WorkspaceItem, TsVariables> vars) {
         vars.forEach((item, v) -> {
             boolean dirty = false;
             Collection<ITsVariable> variables = v.variables();
@@ -17,6 +17,8 @@
 package ec.jwsacruncher;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -27,8 +29,12 @@ import java.io.File;
 class Args {
 
     @lombok.NonNull
-    private final File workspace;
+    private final List<File> workspaces;
 
     @lombok.NonNull
     private final WsaConfig config;
+
+    static Args of(@lombok.NonNull File workspace, @lombok.NonNull WsaConfig config) {
+        return of(Collections.singletonList(workspace), config);
+    }
 }
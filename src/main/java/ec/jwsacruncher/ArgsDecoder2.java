@@ -21,7 +21,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -52,9 +57,12 @@ import picocli.jansi.graalvm.AnsiConsole;
 final class ArgsDecoder2 implements Callable<Args> {
 
     @CommandLine.Parameters(
-            description = "Workspace file."
+            arity = "1..*",
+            paramLabel = "<workspace>",
+            description = "Workspace file(s). Wildcards in the file name (e.g. data/*.xml) are expanded "
+            + "and a list of workspaces can be read from a manifest file with @<manifest>."
     )
-    private File workspace;
+    private List<String> workspaces;
 
     @CommandLine.Option(
             names = {"-x", "-X"},
@@ -84,6 +92,14 @@ final class ArgsDecoder2 implements Callable<Args> {
     )
     private String policy = null;
 
+    @CommandLine.Option(
+            names = {"--policies"},
+            paramLabel = "<policy>",
+            split = ",",
+            description = "Revision analysis: crunches the workspace with each of these policies, in [output]/[policy]. The workspace is not saved."
+    )
+    private List<String> policies = null;
+
     @CommandLine.Option(
             names = {"-f"},
             paramLabel = "<layout>",
@@ -91,6 +107,224 @@ final class ArgsDecoder2 implements Callable<Args> {
     )
     private String layout = null;
 
+    @CommandLine.Option(
+            names = {"--processing"},
+            paramLabel = "<id>",
+            split = ",",
+            description = "Only crunches the multi-processings with these ids."
+    )
+    private List<String> processings = null;
+
+    @CommandLine.Option(
+            names = {"--series"},
+            paramLabel = "<pattern>",
+            split = ",",
+            description = "Only crunches the series whose name matches one of these patterns (* and ? wildcards)."
+    )
+    private List<String> series = null;
+
+    @CommandLine.Option(
+            names = {"--source"},
+            paramLabel = "<source>",
+            split = ",",
+            description = "Only crunches the series of these providers."
+    )
+    private List<String> sources = null;
+
+    @CommandLine.Option(
+            names = {"--monikers"},
+            paramLabel = "<file>",
+            description = "File that contains the ids of the series to crunch, one by line."
+    )
+    private File monikersFile = null;
+
+    @CommandLine.Option(
+            names = {"--checkpoint"},
+            description = "Keeps a journal of the processed bundles in [output]/.checkpoint."
+    )
+    private boolean checkpoint = false;
+
+    @CommandLine.Option(
+            names = {"--resume"},
+            description = "Resumes an interrupted run from its checkpoint."
+    )
+    private boolean resume = false;
+
+    @CommandLine.Option(
+            names = {"--workers"},
+            paramLabel = "<host:port>",
+            split = ",",
+            description = "Workers of a distributed crunch. The multi-processings are split in shards that are sent to the workers."
+    )
+    private List<String> workers = null;
+
+    @CommandLine.Option(
+            names = {"--worker"},
+            paramLabel = "<port>",
+            description = "Runs as a worker of a distributed crunch, listening on the given port."
+    )
+    private Integer workerPort = null;
+
+    @CommandLine.Option(
+            names = {"--worker-address"},
+            paramLabel = "<address>",
+            description = "Address on which a worker listens (default: loopback). A shared token must be set in the "
+            + "JWSACRUNCHER_WORKER_TOKEN environment variable of the workers and of the coordinator to listen on another address."
+    )
+    private String workerAddress = null;
+
+    @CommandLine.Option(
+            names = {"--threads"},
+            paramLabel = "<n>",
+            description = "Number of estimation threads. By default, the processors available to the process "
+            + "(cgroup quota and CPU affinity included)."
+    )
+    private Integer threads = null;
+
+    @CommandLine.Option(
+            names = {"--cpu-share"},
+            paramLabel = "<share>",
+            description = "Share (between 0 and 1) of the available processors used for the estimation."
+    )
+    private Double cpuShare = null;
+
+    @CommandLine.Option(
+            names = {"--priority"},
+            paramLabel = "<priority>",
+            description = "Priority (1-10) of the estimation threads. 1 by default."
+    )
+    private Integer priority = null;
+
+    @CommandLine.Option(
+            names = {"--io-threads"},
+            paramLabel = "<n>",
+            description = "Number of threads used for the data queries and the output writes. "
+            + "These tasks run in the main thread by default."
+    )
+    private Integer ioThreads = null;
+
+    @CommandLine.Option(
+            names = {"--virtual-threads"},
+            description = "Runs the data queries and the output writes on virtual threads (Java 21+). "
+            + "The estimation stays on a pool bounded by the number of processors."
+    )
+    private boolean virtualThreads = false;
+
+    @CommandLine.Option(
+            names = {"--cache"},
+            paramLabel = "<observations>",
+            description = "Caches the data of the series, up to the given number of observations in memory."
+    )
+    private Long cacheSize = null;
+
+    @CommandLine.Option(
+            names = {"--cache-dir"},
+            paramLabel = "<folder>",
+            description = "Folder in which the cached data are kept between runs. "
+            + "Data read from files are reused as long as the files are not modified."
+    )
+    private String cacheFolder = null;
+
+    @CommandLine.Option(
+            names = {"--cache-ttl"},
+            paramLabel = "<seconds>",
+            description = "Maximum age of the cached data that cannot be checked against their source (databases...). "
+            + "Such data are not reused by default."
+    )
+    private Integer cacheTtl = null;
+
+    @CommandLine.Option(
+            names = {"--off-heap"},
+            description = "Keeps the data of the series waiting for their bundle in memory-mapped buffers "
+            + "instead of the heap. The data are loaded in the items when their bundle is processed."
+    )
+    private boolean offHeap = false;
+
+    @CommandLine.Option(
+            names = {"--timeout"},
+            paramLabel = "<seconds>",
+            description = "Time budget of the estimation of a series. The series that exceed it are reported and left out of the outputs."
+    )
+    private Integer timeout = null;
+
+    @CommandLine.Option(
+            names = {"--fallback"},
+            description = "Retries the series that exceed their time budget with the RSA0 specification of their method."
+    )
+    private boolean fallback = false;
+
+    @CommandLine.Option(
+            names = {"--failure-threshold"},
+            paramLabel = "<percent>",
+            description = "Maximum percentage of failed series. The exit code is not zero if it is exceeded."
+    )
+    private Double failureThreshold = null;
+
+    @CommandLine.Option(
+            names = {"--streaming"},
+            description = "Extracts the values of the matrix output as soon as the series are processed, "
+            + "so that their results are released before the end of their bundle."
+    )
+    private boolean streaming = false;
+
+    @CommandLine.Option(
+            names = {"--compress-series"},
+            paramLabel = "<compression>",
+            description = "Compression of the series files: none (default), gzip or zstd (requires zstd-jni)."
+    )
+    private String seriesCompression = null;
+
+    @CommandLine.Option(
+            names = {"--compress-matrix"},
+            paramLabel = "<compression>",
+            description = "Compression of the matrix files: none (default), gzip or zstd (requires zstd-jni)."
+    )
+    private String matrixCompression = null;
+
+    @CommandLine.Option(
+            names = {"--snapshot"},
+            description = "Writes the data of all the series in [workspace].snapshot, next to the workspace."
+    )
+    private boolean snapshot = false;
+
+    @CommandLine.Option(
+            names = {"--from-snapshot"},
+            description = "Reads the data of all the series from [workspace].snapshot instead of their providers."
+    )
+    private boolean fromSnapshot = false;
+
+    @CommandLine.Option(
+            names = {"--warm-start"},
+            description = "Initialises the estimation of the series with their previous parameters (policy 'parameters' only). The series that fail are re-estimated from scratch."
+    )
+    private boolean warmStart = false;
+
+    @CommandLine.Option(
+            names = {"--calendar-cache"},
+            paramLabel = "<values>",
+            description = "Shares the calendar regressors between the series of a workspace, up to a maximum number of values (disabled by default). "
+            + "The calendars of the workspace are then replaced by proxies, which only implement IGregorianCalendarProvider."
+    )
+    private Long calendarCacheSize = null;
+
+    @CommandLine.Option(
+            names = {"--deduplicate"},
+            description = "Estimates only once the identical series (same moniker, name, specification and policy) of the multi-processings of a workspace."
+    )
+    private boolean deduplicate = false;
+
+    @CommandLine.Option(
+            names = {"--watch"},
+            description = "After the crunch, watches the files of the series and re-crunches the series of the files that change."
+    )
+    private boolean watch = false;
+
+    @CommandLine.Option(
+            names = {"--jfr"},
+            description = "Records the stages of the crunch (and the default JVM events) with Java Flight Recorder in [output]/jwsacruncher.jfr."
+    )
+    private boolean jfr = false;
+
     @Override
     public Args call() throws Exception {
         WsaConfig config = configFile != null ? WsaConfig.read(configFile) : new WsaConfig();
@@ -98,7 +332,7 @@ final class ArgsDecoder2 implements Callable<Args> {
             config.Output = output;
         }
         if (matrixFile != null) {
-            config.Matrix = readMatrixConfig(matrixFile);
+            config.Matrix = readLines(matrixFile);
         }
         if (policy != null) {
             config.policy = policy;
@@ -106,13 +340,155 @@ final class ArgsDecoder2 implements Callable<Args> {
                 throw new IllegalArgumentException("Invalid policy arg");
             }
         }
+        if (policies != null) {
+            for (String p : policies) {
+                if (WsaConfig.toPolicy(p) == EstimationPolicyType.None) {
+                    throw new IllegalArgumentException("Invalid policy arg: " + p);
+                }
+            }
+            config.Policies = policies.toArray(new String[0]);
+        }
         if (layout != null) {
             config.layout = layout;
         }
-        return Args.of(workspace, config);
+        if (processings != null) {
+            config.Processings = processings.toArray(new String[0]);
+        }
+        if (series != null) {
+            config.Series = series.toArray(new String[0]);
+        }
+        if (sources != null) {
+            config.Sources = sources.toArray(new String[0]);
+        }
+        if (monikersFile != null) {
+            config.Monikers = readLines(monikersFile);
+        }
+        if (checkpoint) {
+            config.checkpoint = true;
+        }
+        if (resume) {
+            config.resume = true;
+        }
+        if (workers != null) {
+            config.Workers = workers.toArray(new String[0]);
+        }
+        if (workerPort != null) {
+            config.WorkerPort = workerPort;
+        }
+        if (workerAddress != null) {
+            config.WorkerAddress = workerAddress;
+        }
+        if (threads != null) {
+            config.Threads = threads;
+        }
+        if (cpuShare != null) {
+            config.CpuShare = cpuShare;
+        }
+        if (priority != null) {
+            config.Priority = priority;
+        }
+        if (ioThreads != null) {
+            config.IoThreads = ioThreads;
+        }
+        if (virtualThreads) {
+            config.virtualThreads = true;
+        }
+        if (cacheSize != null) {
+            config.CacheSize = cacheSize;
+        }
+        if (cacheFolder != null) {
+            config.CacheFolder = cacheFolder;
+        }
+        if (cacheTtl != null) {
+            config.CacheTtl = cacheTtl;
+        }
+        if (offHeap) {
+            config.offHeap = true;
+        }
+        if (timeout != null) {
+            config.Timeout = timeout;
+        }
+        if (fallback) {
+            config.fallback = true;
+        }
+        if (failureThreshold != null) {
+            config.FailureThreshold = failureThreshold;
+        }
+        if (streaming) {
+            config.streaming = true;
+        }
+        if (seriesCompression != null) {
+            config.SeriesCompression = seriesCompression;
+        }
+        if (matrixCompression != null) {
+            config.MatrixCompression = matrixCompression;
+        }
+        if (snapshot && fromSnapshot) {
+            throw new IllegalArgumentException("--snapshot and --from-snapshot cannot be used together");
+        }
+        if (snapshot) {
+            config.snapshot = true;
+        }
+        if (fromSnapshot) {
+            config.fromSnapshot = true;
+        }
+        if (warmStart) {
+            config.warmStart = true;
+        }
+        if (calendarCacheSize != null) {
+            config.CalendarCacheSize = calendarCacheSize;
+        }
+        if (deduplicate) {
+            config.deduplicate = true;
+        }
+        if (watch) {
+            config.watch = true;
+        }
+        if (jfr) {
+            config.jfr = true;
+        }
+        return Args.of(expandWorkspaces(workspaces), config);
+    }
+
+    private static List<File> expandWorkspaces(List<String> items) throws IOException {
+        List<File> result = new ArrayList<>();
+        for (String item : items) {
+            if (isGlob(item)) {
+                result.addAll(expandGlob(item));
+            } else {
+                result.add(new File(item));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isGlob(String item) {
+        return item.indexOf('*') != -1 || item.indexOf('?') != -1 || item.indexOf('[') != -1 || item.indexOf('{') != -1;
+    }
+
+    private static List<File> expandGlob(String pattern) throws IOException {
+        File file = new File(pattern);
+        File parent = file.getParentFile();
+        if (parent != null && isGlob(parent.getPath())) {
+            throw new IllegalArgumentException("Wildcards are only supported in the file name: '" + pattern + "'");
+        }
+        Path dir = parent != null ? parent.toPath() : new File("").getAbsoluteFile().toPath();
+        List<File> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, file.getName())) {
+            for (Path o : stream) {
+                if (Files.isRegularFile(o)) {
+                    result.add(parent != null ? o.toFile() : new File(o.getFileName().toString()));
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No workspace matching '" + pattern + "'");
+        }
+        Collections.sort(result);
+        return result;
     }
 
-    private static String[] readMatrixConfig(File file) throws IOException {
+    private static String[] readLines(File file) throws IOException {
         return Files.readAllLines(file.toPath()).toArray(new String[0]);
     }
 
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import ec.demetra.workspace.file.FileWorkspace;
+import ec.jwsacruncher.batch.CrunchMonitor;
+import ec.jwsacruncher.batch.SaBatchReport;
+import ec.jwsacruncher.batch.SaExecutors;
+import ec.jwsacruncher.core.TsDataCache;
+import ec.tss.sa.ISaDiagnosticsFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import ec.tss.sa.output.BasicConfiguration;
+import ec.tss.tsproviders.IFileLoader;
+import ec.tss.tsproviders.TsProviders;
+import ec.tstoolkit.algorithm.CompositeResults;
+import ec.tstoolkit.algorithm.ProcessingContext;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * In-process entry point of the cruncher. A cruncher runs the same pipeline
+ * as the command line on a workspace (refresh, estimation, outputs, save) and
+ * reports every processed item to a listener as soon as its estimation is
+ * finished, from the estimation threads.
+ * <p>
+ * The providers and the processing factories are registered once per JVM.
+ * Each run gets its own processing context and its own cache of the series
+ * (put in front of the providers for the duration of the run and released at
+ * its end), and the global settings changed by a run (diagnostics, paths of
+ * the file providers, format of the numbers) are restored at its end. The
+ * runs share the global registries of jdemetra, so they are serialized.
+ * <pre>
+ * SaBatchReport report = Cruncher.builder()
+ *         .workspace(path)
+ *         .config(config)
+ *         .listener((processing, item, results) -> ...)
+ *         .build()
+ *         .run();
+ * </pre>
+ */
+public final class Cruncher {
+
+    @FunctionalInterface
+    public static interface Listener {
+
+        /**
+         * Called (concurrently) as soon as the estimation of an item is
+         * finished.
+         *
+         * @param processing The name of the multi-processing of the item
+         * @param item
+         * @param results The results or null if the estimation failed
+         */
+        void processed(String processing, SaItem item, CompositeResults results);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private Path workspace;
+        private WsaConfig config = new WsaConfig();
+        private Listener listener;
+
+        private Builder() {
+        }
+
+        public Builder workspace(Path workspace) {
+            this.workspace = workspace;
+            return this;
+        }
+
+        public Builder config(WsaConfig config) {
+            this.config = config;
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Cruncher build() {
+            Objects.requireNonNull(workspace, "workspace");
+            Objects.requireNonNull(config, "config");
+            return new Cruncher(workspace, config, listener);
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static boolean loaded;
+    private static volatile TsDataCache cache;
+
+    private final Path workspace;
+    private final WsaConfig config;
+    private final Listener listener;
+    private volatile boolean cancelled;
+
+    private Cruncher(Path workspace, WsaConfig config, Listener listener) {
+        this.workspace = workspace;
+        this.config = config;
+        this.listener = listener;
+    }
+
+    /**
+     * Crunches the workspace. Blocks until the end of the processing or its
+     * cancellation.
+     *
+     * @return The outcomes of the processed items
+     * @throws IOException
+     */
+    public SaBatchReport run() throws IOException {
+        synchronized (LOCK) {
+            if (!loaded) {
+                App.loadResources(() -> cache);
+                loaded = true;
+            }
+            Map<String, Boolean> diagnostics = new HashMap<>();
+            for (ISaDiagnosticsFactory o : SaManager.instance.getDiagnostics()) {
+                diagnostics.put(o.getName(), o.isEnabled());
+            }
+            Map<String, File[]> paths = new HashMap<>();
+            for (IFileLoader o : TsProviders.all().filter(IFileLoader.class)) {
+                paths.put(o.getSource(), o.getPaths());
+            }
+            int ndecs = BasicConfiguration.getDecimalNumber();
+            char csvsep = BasicConfiguration.getCsvSeparator();
+            ProcessingContext previous = ProcessingContext.getActiveContext();
+            ProcessingContext context = new ProcessingContext();
+            ProcessingContext.setActiveContext(context);
+            App.enableDiagnostics(config.Matrix);
+            CrunchMonitor.start();
+            // the cache is released after the executors, at the end of the run
+            try (TsDataCache current = App.newCache(config);
+                    SaExecutors executors = App.newExecutors(config);
+                    Closeable snapshot = App.openSnapshot(current, config, workspace.toFile());
+                    FileWorkspace ws = FileWorkspace.open(workspace)) {
+                cache = current;
+                SaBatchReport report = App.process(ws, context, config, App.getOutputFolder(config, ws), executors, null, this);
+                App.completeSnapshot(current, config, this);
+                return report;
+            } finally {
+                cache = null;
+                ProcessingContext.setActiveContext(previous);
+                for (ISaDiagnosticsFactory o : SaManager.instance.getDiagnostics()) {
+                    Boolean enabled = diagnostics.get(o.getName());
+                    if (enabled != null) {
+                        o.setEnabled(enabled);
+                    }
+                }
+                for (IFileLoader o : TsProviders.all().filter(IFileLoader.class)) {
+                    if (paths.containsKey(o.getSource())) {
+                        o.setPaths(paths.get(o.getSource()));
+                    }
+                }
+                BasicConfiguration.setDecimalNumber(ndecs);
+                BasicConfiguration.setCsvSeparator(csvsep);
+            }
+        }
+    }
+
+    /**
+     * Cancels the processing: the items that are not started yet are skipped
+     * and the multi-processings that are not complete are not saved. The
+     * outputs of the bundles that have already been flushed are kept.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void processed(String processing, SaItem item, CompositeResults results) {
+        if (listener != null) {
+            listener.processed(processing, item, results);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import com.google.common.base.Stopwatch;
+import ec.demetra.workspace.WorkspaceItem;
+import ec.demetra.workspace.file.FileWorkspace;
+import ec.jwsacruncher.batch.SaExecutors;
+import ec.jwsacruncher.core.FileRepository;
+import ec.jwsacruncher.core.SaItemFilter;
+import ec.jwsacruncher.core.SaItemSerializer;
+import ec.jwsacruncher.core.SaItems;
+import ec.jwsacruncher.distributed.Shard;
+import ec.jwsacruncher.distributed.ShardCoordinator;
+import ec.jwsacruncher.distributed.ShardOutput;
+import ec.jwsacruncher.distributed.ShardWorker;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaProcessing;
+import ec.tstoolkit.algorithm.ProcessingContext;
+import ec.tstoolkit.timeseries.regression.TsVariables;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Coordinator/worker mode. The coordinator splits the multi-processings of a
+ * workspace in shards that are refreshed, estimated and written to the
+ * output folder by the workers; the processed items are sent back and merged
+ * in the workspace by the coordinator. The shards are the bundles of a local
+ * crunch, so that the workers write the same output files as a local crunch.
+ * The outputs of a shard are written in a folder of their own and moved to
+ * the output folder once the coordinator has merged the shard. The workers
+ * must have access to the same workspace and output folder (shared file
+ * system).
+ */
+@lombok.experimental.UtilityClass
+class DistributedCrunch {
+
+    /**
+     * Environment variable that contains the token shared by the coordinator
+     * and the workers.
+     */
+    static final String TOKEN = "JWSACRUNCHER_WORKER_TOKEN";
+
+    boolean isEnabled(WsaConfig config) {
+        return config.WorkerPort != null || (config.Workers != null && config.Workers.length > 0);
+    }
+
+    void process(List<File> workspaces, WsaConfig config) throws IOException {
+        if (workspaces.size() != 1) {
+            throw new IllegalArgumentException("Distributed mode requires a single workspace");
+        }
+        if (config.WorkerPort != null) {
+            serve(workspaces.get(0), config);
+        } else {
+            coordinate(workspaces.get(0), config);
+        }
+    }
+
+    private void serve(File workspace, WsaConfig config) throws IOException {
+        App.loadResources(config);
+        App.enableDiagnostics(config.Matrix);
+
+        InetAddress address = config.WorkerAddress != null ? InetAddress.getByName(config.WorkerAddress) : InetAddress.getLoopbackAddress();
+        try (SaExecutors executors = App.newExecutors(config);
+                Worker state = new Worker(workspace, config, executors);
+                ShardWorker worker = new ShardWorker(address, config.WorkerPort, System.getenv(TOKEN), state::process)) {
+            System.out.println("Worker listening on " + address.getHostAddress() + ":" + worker.getPort());
+            worker.serve();
+        }
+    }
+
+    /**
+     * State of a worker. The workspace, its calendars, its variables and its
+     * multi-processings are loaded once by session of the coordinator, so
+     * that a new run of the coordinator sees the changes made by the previous
+     * ones.
+     */
+    private static final class Worker implements Closeable {
+
+        private final File workspace;
+        private final WsaConfig config;
+        private final SaExecutors executors;
+        private final Map<String, List<SaItem>> processings = new HashMap<>();
+        private String session;
+        private FileWorkspace ws;
+        private File output;
+
+        Worker(File workspace, WsaConfig config, SaExecutors executors) {
+            this.workspace = workspace;
+            // a shard is a bundle
+            this.config = config.copy();
+            this.config.BundleSize = Integer.MAX_VALUE;
+            this.executors = executors;
+        }
+
+        ShardWorker.Attempt process(String session, Shard shard) throws IOException {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+
+            if (!session.equals(this.session)) {
+                open();
+                this.session = session;
+            }
+            List<SaItem> all = processings.get(shard.getProcessing());
+            if (all == null) {
+                all = SaItems.toList(FileRepository.loadSaProcessing(ws, shard.getProcessing()));
+                processings.put(shard.getProcessing(), all);
+            }
+            SaProcessing processing = new SaProcessing();
+            for (int pos : shard.getItems()) {
+                if (pos < 0 || pos >= all.size()) {
+                    throw new IOException("Invalid item position " + pos + " in shard " + shard.getName());
+                }
+                processing.add(all.get(pos));
+            }
+            ShardOutput attempt = ShardOutput.create(output, shard);
+            byte[] result;
+            try {
+                App.crunch(processing, null, shard.getName(), config, attempt.getFolder(), App.applyOutputConfig(config, attempt.getFolder()), executors, null, null, null, null);
+                result = SaItemSerializer.toBytes(processing);
+            } catch (IOException | RuntimeException ex) {
+                attempt.discard();
+                throw ex;
+            }
+
+            System.out.println("Shard " + shard.getName() + " processed in " + stopwatch.elapsed(TimeUnit.SECONDS) + "s");
+            return attempt.toAttempt(result);
+        }
+
+        private void open() throws IOException {
+            close();
+            session = null;
+            ws = FileWorkspace.open(workspace.toPath());
+            ProcessingContext context = new ProcessingContext();
+            ProcessingContext.setActiveContext(context);
+            FileRepository.loadAllCalendars(ws, context, App.newCalendarCache(config));
+            FileRepository.loadAllVariables(ws, context);
+            App.applyFilePaths(App.getFilePaths(config));
+            output = App.getOutputFolder(config, ws);
+        }
+
+        @Override
+        public void close() throws IOException {
+            processings.clear();
+            if (ws != null) {
+                ws.close();
+                ws = null;
+            }
+        }
+    }
+
+    private void coordinate(File workspace, WsaConfig config) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        App.loadResources(config);
+        List<InetSocketAddress> workers = parseWorkers(config.Workers);
+
+        SaItemFilter filter = App.getFilter(config);
+        try (FileWorkspace ws = FileWorkspace.open(workspace.toPath())) {
+            ProcessingContext context = ProcessingContext.getActiveContext();
+            FileRepository.loadAllCalendars(ws, context);
+            Map<WorkspaceItem, TsVariables> vars = FileRepository.loadAllVariables(ws, context);
+            Map<WorkspaceItem, SaProcessing> sa = FileRepository.loadAllSaProcessing(ws, context, filter::acceptsProcessing);
+
+            App.applyFilePaths(App.getFilePaths(config));
+            if (config.refresh) {
+                // stored before sending the shards so that the workers use the refreshed variables
+                App.refreshVariables(ws, vars);
+            }
+
+            Map<String, SaProcessing> processings = new LinkedHashMap<>();
+            Map<String, List<SaItem>> items = new LinkedHashMap<>();
+            List<Shard> shards = new ArrayList<>();
+            for (Entry<WorkspaceItem, SaProcessing> o : sa.entrySet()) {
+                String id = o.getKey().getId();
+                List<SaItem> list = SaItems.toList(o.getValue());
+                int[] positions = filter.select(list);
+                if (positions.length > 0) {
+                    processings.put(id, o.getValue());
+                    items.put(id, list);
+                    shards.addAll(Shard.split(id, positions, config.BundleSize > 0 ? config.BundleSize : positions.length));
+                }
+            }
+
+            System.out.println("Sending " + shards.size() + " shard(s) to " + workers.size() + " worker(s)");
+            ShardCoordinator coordinator = new ShardCoordinator(workers, System.getenv(TOKEN), new ConsoleFeedback());
+            List<Shard> failed = coordinator.run(shards, (shard, result) -> merge(processings.get(shard.getProcessing()), items.get(shard.getProcessing()), shard, result));
+
+            System.out.println("Saving new processing...");
+            for (Entry<WorkspaceItem, SaProcessing> o : sa.entrySet()) {
+                if (processings.containsKey(o.getKey().getId())) {
+                    FileRepository.storeSaProcessing(ws, o.getKey(), o.getValue());
+                }
+            }
+
+            if (!failed.isEmpty()) {
+                throw new IOException(failed.size() + " shard(s) failed: " + failed.stream().map(Shard::getName).collect(Collectors.joining(", ")));
+            }
+        }
+
+        System.out.println("Total processing time: " + stopwatch.elapsed(TimeUnit.SECONDS) + "s");
+    }
+
+    private void merge(SaProcessing processing, List<SaItem> items, Shard shard, byte[] result) throws IOException {
+        List<SaItem> processed = SaItemSerializer.fromBytes(result);
+        int[] pos = shard.getItems();
+        if (processed.size() != pos.length) {
+            throw new IOException("Unexpected number of items in shard " + shard.getName());
+        }
+        synchronized (processing) {
+            for (int i = 0; i < pos.length; ++i) {
+                processing.replace(items.get(pos[i]), processed.get(i));
+            }
+        }
+    }
+
+    private List<InetSocketAddress> parseWorkers(String[] workers) {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String worker : workers) {
+            int index = worker.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid worker '" + worker + "', expected <host:port>");
+            }
+            try {
+                result.add(new InetSocketAddress(worker.substring(0, index).trim(), Integer.parseInt(worker.substring(index + 1).trim())));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid worker '" + worker + "', expected <host:port>", ex);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import ec.demetra.workspace.WorkspaceItem;
+import ec.demetra.workspace.file.FileWorkspace;
+import ec.jwsacruncher.batch.CrunchMonitor;
+import ec.jwsacruncher.batch.ISaBatchFeedback;
+import ec.jwsacruncher.batch.ISaBundle;
+import ec.jwsacruncher.batch.SaBatchInformation;
+import ec.jwsacruncher.batch.SaBatchProcessor;
+import ec.jwsacruncher.batch.SaExecutors;
+import ec.jwsacruncher.core.FileRepository;
+import ec.jwsacruncher.core.SaItems;
+import ec.jwsacruncher.core.TsDataCache;
+import ec.tss.ITsProvider;
+import ec.tss.TsFactory;
+import ec.tss.TsMoniker;
+import ec.tss.sa.ISaOutputFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaProcessing;
+import ec.tstoolkit.algorithm.ProcessingContext;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch mode. The workspace is crunched once; then the folders that contain
+ * the files of the series (spreadsheets, text files...), the folders of the
+ * file paths of the configuration and the folder of the workspace are
+ * watched. When a file changes, the series that come from it are refreshed
+ * and estimated again, the outputs of their multi-processings are rewritten
+ * and the multi-processings are saved. All the items keep their results in
+ * memory, so that the other series are not estimated again. The series are
+ * always read from their files (snapshots are not used). The mode runs until
+ * the process is stopped.
+ */
+@lombok.experimental.UtilityClass
+class WatchMode {
+
+    /**
+     * Delay without new event before the changes are processed, so that a
+     * file that is being written is only handled once.
+     */
+    private final long QUIET_PERIOD = 1000;
+
+    boolean isEnabled(WsaConfig config) {
+        return Boolean.TRUE.equals(config.watch);
+    }
+
+    void process(List<File> workspaces, WsaConfig config) throws IOException {
+        if (Boolean.TRUE.equals(config.fromSnapshot)) {
+            throw new IllegalArgumentException("Watch mode cannot read the series from a snapshot");
+        }
+        if (workspaces.size() != 1) {
+            throw new IllegalArgumentException("Watch mode requires a single workspace");
+        }
+        File workspace = workspaces.get(0);
+        Map<WorkspaceItem, SaProcessing> sa = new LinkedHashMap<>();
+        try (TsDataCache cache = App.loadResources(config);
+                SaExecutors executors = App.newExecutors(config);
+                FileWorkspace ws = FileWorkspace.open(workspace.toPath());
+                WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            App.enableDiagnostics(config.Matrix);
+            CrunchMonitor.start();
+            File output = App.getOutputFolder(config, ws);
+            App.process(ws, ProcessingContext.getActiveContext(), config, output, executors, sa, null);
+
+            // the matrix is rewritten with the other outputs
+            WsaConfig wconfig = config.copy();
+            wconfig.streaming = null;
+            List<ISaOutputFactory> outputs = App.applyOutputConfig(wconfig, output);
+
+            Set<Path> folders = new HashSet<>();
+            register(watcher, folders, getFolders(sa, config, workspace));
+            System.out.println("Watching " + folders.size() + " folders...");
+            while (true) {
+                Set<Path> changes = take(watcher);
+                if (!changes.isEmpty()) {
+                    update(ws, sa, changes, wconfig, outputs, executors, cache);
+                    register(watcher, folders, getFolders(sa, config, workspace));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Re-crunches the series that come from the changed files.
+     */
+    private void update(FileWorkspace ws, Map<WorkspaceItem, SaProcessing> sa, Set<Path> changes, WsaConfig config, List<ISaOutputFactory> outputs, SaExecutors executors, TsDataCache cache) throws IOException {
+        Map<WorkspaceItem, List<SaItem>> affected = new LinkedHashMap<>();
+        Set<ITsProvider> providers = new HashSet<>();
+        Set<TsMoniker> monikers = new HashSet<>();
+        for (Entry<WorkspaceItem, SaProcessing> o : sa.entrySet()) {
+            for (SaItem item : o.getValue()) {
+                TsMoniker moniker = item.getTs().getMoniker();
+                ITsProvider provider = moniker.getSource() != null ? TsFactory.instance.getProvider(moniker.getSource()) : null;
+                Path file = getFile(provider, moniker);
+                if (file != null && changes.contains(file)) {
+                    affected.computeIfAbsent(o.getKey(), k -> new ArrayList<>()).add(item);
+                    providers.add(provider);
+                    monikers.add(moniker);
+                }
+            }
+        }
+        if (affected.isEmpty()) {
+            return;
+        }
+        // the changed series must be read again from their files
+        if (cache != null) {
+            cache.invalidate(monikers);
+        }
+        providers.forEach(ITsProvider::clearCache);
+        CrunchMonitor.start();
+        for (Entry<WorkspaceItem, List<SaItem>> o : affected.entrySet()) {
+            long start = System.currentTimeMillis();
+            String id = o.getKey().getId();
+            SaProcessing processing = sa.get(o.getKey());
+            System.out.println(o.getValue().size() + " series changed in " + id);
+            recrunch(processing, o.getValue(), id, config, outputs, executors);
+            FileRepository.storeSaProcessing(ws, o.getKey(), processing);
+            System.out.println(id + " updated in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Refreshes and estimates some items of a multi-processing and rewrites
+     * the outputs of the whole multi-processing. Only the selected items are
+     * estimated; the outputs of the other items are generated from the
+     * results they have kept.
+     */
+    void recrunch(SaProcessing processing, List<SaItem> selection, String name, WsaConfig config, List<ISaOutputFactory> outputs, SaExecutors executors) {
+        List<SaItem> items = App.refresh(processing, selection, config.getPolicy());
+        SaBatchInformation changed = new SaBatchInformation(0);
+        changed.setName(name);
+        changed.setItems(items);
+        changed.setOutputs(Collections.emptyList());
+        changed.setIoExecutor(executors.getIo());
+        changed.setCompress(false);
+        SaBatchProcessor processor = new SaBatchProcessor(changed, new ConsoleFeedback(), executors.getCompute());
+        processor.setMonitor(CrunchMonitor.getInstance());
+        CrunchMonitor.getInstance().startProcessing(name, items.size(), executors);
+        processor.process();
+        processor.getReplacements().forEach(processing::replace);
+
+        List<SaItem> all = SaItems.toList(processing);
+        int bundleSize = config.BundleSize;
+        SaBatchInformation info = new SaBatchInformation(all.size() > bundleSize ? bundleSize : 0);
+        info.setName(name);
+        info.setItems(all);
+        info.setOutputs(outputs);
+        info.setIoExecutor(executors.getIo());
+        info.setCompress(false);
+        ISaBatchFeedback feedback = new ConsoleFeedback();
+        for (Iterator<ISaBundle> iter = info.start(); iter.hasNext();) {
+            iter.next().flush(feedback);
+        }
+        info.close();
+    }
+
+    private Set<Path> getFolders(Map<WorkspaceItem, SaProcessing> sa, WsaConfig config, File workspace) {
+        Set<Path> result = new HashSet<>();
+        for (SaProcessing processing : sa.values()) {
+            for (SaItem item : processing) {
+                TsMoniker moniker = item.getTs().getMoniker();
+                if (moniker.getSource() != null) {
+                    Path file = getFile(TsFactory.instance.getProvider(moniker.getSource()), moniker);
+                    if (file != null && file.getParent() != null) {
+                        result.add(file.getParent());
+                    }
+                }
+            }
+        }
+        for (File path : App.getFilePaths(config)) {
+            if (path.isDirectory()) {
+                result.add(path.toPath().toAbsolutePath().normalize());
+            }
+        }
+        File folder = workspace.getAbsoluteFile().getParentFile();
+        if (folder != null) {
+            result.add(folder.toPath().normalize());
+        }
+        return result;
+    }
+
+    private void register(WatchService watcher, Set<Path> registered, Set<Path> folders) throws IOException {
+        for (Path folder : folders) {
+            if (registered.add(folder)) {
+                folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    /**
+     * Waits for changes and collects them until the quiet period has elapsed.
+     *
+     * @return The changed files (absolute paths)
+     */
+    private Set<Path> take(WatchService watcher) throws InterruptedException {
+        Set<Path> result = new HashSet<>();
+        WatchKey key = watcher.take();
+        while (key != null) {
+            Path folder = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                    result.add(folder.resolve((Path) event.context()).toAbsolutePath().normalize());
+                }
+            }
+            key.reset();
+            key = watcher.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    private Path getFile(ITsProvider provider, TsMoniker moniker) {
+        File file = provider != null ? TsDataCache.getFile(provider, moniker) : null;
+        return file != null ? file.toPath().toAbsolutePath().normalize() : null;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Helpers for crunching several workspaces in a single run.
+ */
+@lombok.experimental.UtilityClass
+class WorkspaceBatch {
+
+    /**
+     * Orders workspaces by decreasing size so that the largest ones are
+     * started first and the smallest ones fill the end of the run.
+     *
+     * @param workspaces
+     * @return a new list
+     */
+    List<File> sortBySize(List<File> workspaces) {
+        Map<File, Long> sizes = new HashMap<>();
+        workspaces.forEach(o -> sizes.put(o, getSize(o)));
+        List<File> result = new ArrayList<>(workspaces);
+        result.sort(Comparator.comparing(sizes::get, Comparator.reverseOrder()));
+        return result;
+    }
+
+    /**
+     * Computes the size of a workspace: its main file and the content of the
+     * folder that has the same base name.
+     *
+     * @param workspace
+     * @return
+     */
+    long getSize(File workspace) {
+        long result = workspace.length();
+        File folder = new File(workspace.getParentFile(), getBaseName(workspace));
+        if (folder.isDirectory()) {
+            try (Stream<Path> files = Files.walk(folder.toPath())) {
+                result += files.filter(Files::isRegularFile).mapToLong(WorkspaceBatch::getFileSize).sum();
+            } catch (IOException | UncheckedIOException ex) {
+                // size is only used for scheduling
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Names the output sub-folders of workspaces. A folder is named after the
+     * base name of its workspace; when several workspaces have the same base
+     * name (in different folders), the name of their parent folder is added
+     * and, if it is still ambiguous, a counter. The names are compared
+     * without case, as in case-insensitive file systems.
+     *
+     * @param workspaces
+     * @return The unique names, by workspace
+     */
+    Map<File, String> getOutputNames(List<File> workspaces) {
+        Map<String, Integer> counts = new HashMap<>();
+        workspaces.forEach(o -> counts.merge(toKey(getBaseName(o)), 1, Integer::sum));
+        Map<File, String> result = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>();
+        for (File workspace : workspaces) {
+            String name = getBaseName(workspace);
+            if (counts.get(toKey(name)) > 1) {
+                File parent = workspace.getAbsoluteFile().getParentFile();
+                if (parent != null && !parent.getName().isEmpty()) {
+                    name = parent.getName() + "_" + name;
+                }
+            }
+            String unique = name;
+            for (int i = 2; !used.add(toKey(unique)); ++i) {
+                unique = name + "_" + i;
+            }
+            result.put(workspace, unique);
+        }
+        return result;
+    }
+
+    private String toKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    String getBaseName(File workspace) {
+        String name = workspace.getName();
+        int index = name.lastIndexOf('.');
+        return index > 0 ? name.substring(0, index) : name;
+    }
+
+    private long getFileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -25,6 +25,8 @@ import ec.tss.sa.output.CsvLayout;
 import ec.tstoolkit.information.InformationMapping;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ServiceLoader;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import javax.xml.bind.JAXBContext;
@@ -59,6 +61,76 @@ public class WsaConfig {
     @XmlElementWrapper(name = "paths")
     @XmlElement(name = "path")
     public String[] Paths;
+    @XmlElementWrapper(name = "processings")
+    @XmlElement(name = "processing")
+    public String[] Processings;
+    @XmlElementWrapper(name = "seriesfilter")
+    @XmlElement(name = "pattern")
+    public String[] Series;
+    @XmlElementWrapper(name = "sources")
+    @XmlElement(name = "source")
+    public String[] Sources;
+    @XmlElementWrapper(name = "monikers")
+    @XmlElement(name = "moniker")
+    public String[] Monikers;
+    @XmlElementWrapper(name = "workers")
+    @XmlElement(name = "worker")
+    public String[] Workers;
+    @XmlElementWrapper(name = "policies")
+    @XmlElement(name = "policy")
+    public String[] Policies;
+    @XmlAttribute(name = "workerport")
+    public Integer WorkerPort;
+    @XmlAttribute(name = "workeraddress")
+    public String WorkerAddress;
+    @XmlAttribute(name = "checkpoint")
+    public Boolean checkpoint;
+    @XmlAttribute(name = "resume")
+    public Boolean resume;
+    @XmlAttribute(name = "threads")
+    public Integer Threads;
+    @XmlAttribute(name = "cpushare")
+    public Double CpuShare;
+    @XmlAttribute(name = "priority")
+    public Integer Priority;
+    @XmlAttribute(name = "iothreads")
+    public Integer IoThreads;
+    @XmlAttribute(name = "virtualthreads")
+    public Boolean virtualThreads;
+    @XmlAttribute(name = "cachesize")
+    public Long CacheSize;
+    @XmlAttribute(name = "cachefolder")
+    public String CacheFolder;
+    @XmlAttribute(name = "cachettl")
+    public Integer CacheTtl;
+    @XmlAttribute(name = "offheap")
+    public Boolean offHeap;
+    @XmlAttribute(name = "timeout")
+    public Integer Timeout;
+    @XmlAttribute(name = "fallback")
+    public Boolean fallback;
+    @XmlAttribute(name = "failurethreshold")
+    public Double FailureThreshold;
+    @XmlAttribute(name = "streaming")
+    public Boolean streaming;
+    @XmlAttribute(name = "seriescompression")
+    public String SeriesCompression;
+    @XmlAttribute(name = "matrixcompression")
+    public String MatrixCompression;
+    @XmlAttribute(name = "snapshot")
+    public Boolean snapshot;
+    @XmlAttribute(name = "fromsnapshot")
+    public Boolean fromSnapshot;
+    @XmlAttribute(name = "warmstart")
+    public Boolean warmStart;
+    @XmlAttribute(name = "calendarcache")
+    public Long CalendarCacheSize;
+    @XmlAttribute(name = "deduplicate")
+    public Boolean deduplicate;
+    @XmlAttribute(name = "watch")
+    public Boolean watch;
+    @XmlAttribute(name = "jfr")
+    public Boolean jfr;
     @XmlAttribute(name = "bundle")
     public Integer BundleSize = 10000;
     @XmlAttribute(name = "csvlayout")
@@ -72,6 +144,10 @@ public class WsaConfig {
     }
 
     public EstimationPolicyType getPolicy() {
+        return toPolicy(policy);
+    }
+
+    static EstimationPolicyType toPolicy(String policy) {
         if (policy == null) {
             return EstimationPolicyType.None;
         } else if (policy.equalsIgnoreCase("n")
@@ -103,6 +179,39 @@ public class WsaConfig {
         }
     }
 
+    /**
+     * Creates a copy of this configuration with another policy (and without
+     * the list of policies).
+     *
+     * @param policy
+     * @return
+     */
+    WsaConfig withPolicy(String policy) {
+        WsaConfig result = copy();
+        result.policy = policy;
+        result.Policies = null;
+        return result;
+    }
+
+    /**
+     * Creates a shallow copy of this configuration.
+     *
+     * @return
+     */
+    WsaConfig copy() {
+        WsaConfig result = new WsaConfig();
+        try {
+            for (Field field : WsaConfig.class.getFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.set(result, field.get(this));
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return result;
+    }
+
     public CsvLayout getLayout() {
         if (layout == null) {
             return CsvLayout.List;
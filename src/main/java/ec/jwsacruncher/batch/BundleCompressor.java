@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import ec.jwsacruncher.core.Compression;
+import ec.jwsacruncher.core.ParallelCompressor;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.output.BasicConfiguration;
+import ec.tstoolkit.algorithm.CompositeResults;
+import ec.tstoolkit.utilities.LinearId;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compresses the csv files of a bundle as soon as the bundle is flushed. The
+ * files of a bundle are in its own folder, as written by the csv and
+ * csv-matrix outputs (and by {@link StreamingMatrixOutput}), so the files of
+ * the other bundles (and those of the bundles restored from a checkpoint,
+ * compressed by the previous run) are never touched. Must be notified after
+ * the listeners that write files.
+ */
+public final class BundleCompressor implements ISaItemListener, Closeable {
+
+    private final File folder;
+    private final Compression series, matrix;
+    private final String matrixPrefix;
+    private final ExecutorService executor;
+    private volatile IOException error;
+
+    /**
+     *
+     * @param folder The output folder
+     * @param series Compression of the series files
+     * @param matrix Compression of the matrix files
+     * @param matrixPrefix Prefix of the names of the matrix files
+     * @param executor The executor that compresses the blocks of the files
+     */
+    public BundleCompressor(File folder, Compression series, Compression matrix, String matrixPrefix, ExecutorService executor) {
+        this.folder = folder;
+        this.series = series;
+        this.matrix = matrix;
+        this.matrixPrefix = matrixPrefix;
+        this.executor = executor;
+    }
+
+    @Override
+    public void processed(int index, SaItem item, CompositeResults results) {
+    }
+
+    @Override
+    public void flushed(String bundle, int first, int count) {
+        if (error != null) {
+            return;
+        }
+        Path bfolder = BasicConfiguration.folderFromContext(folder, new LinearId(bundle)).toPath();
+        if (!Files.isDirectory(bfolder)) {
+            return;
+        }
+        try {
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(bfolder)) {
+                files = stream.filter(o -> o.getFileName().toString().endsWith(".csv") && Files.isRegularFile(o)).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                ParallelCompressor.compress(file, file.getFileName().toString().startsWith(matrixPrefix) ? matrix : series, executor);
+            }
+        } catch (IOException ex) {
+            error = ex;
+        }
+    }
+
+    /**
+     * @throws IOException The first error raised while compressing a bundle
+     */
+    @Override
+    public void close() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+}
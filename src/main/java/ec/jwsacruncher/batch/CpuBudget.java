@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Number of processors that a crunch may use. Besides the processors reported
+ * by the JVM, the CPU quota of the container (cgroup v1 or v2) and the CPU
+ * affinity of the process (taskset, numactl...) are taken into account, so
+ * that concurrent crunches on a host can be given disjoint partitions.
+ */
+@lombok.experimental.UtilityClass
+public class CpuBudget {
+
+    private static final Path CGROUP2_MAX = Paths.get("/sys/fs/cgroup/cpu.max");
+    private static final Path CGROUP1_QUOTA = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+    private static final Path CGROUP1_PERIOD = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+    private static final Path STATUS = Paths.get("/proc/self/status");
+
+    /**
+     * @return The number of processors available to this process (at least
+     * 1)
+     */
+    public int getAvailableCpus() {
+        int result = Runtime.getRuntime().availableProcessors();
+        double quota = getQuota();
+        if (quota > 0) {
+            result = Math.min(result, (int) Math.ceil(quota));
+        }
+        int affinity = getAffinity();
+        if (affinity > 0) {
+            result = Math.min(result, affinity);
+        }
+        return Math.max(1, result);
+    }
+
+    /**
+     * Computes the number of estimation threads.
+     *
+     * @param threads Explicit number of threads (null or not positive for
+     * automatic sizing)
+     * @param share Share (in ]0, 1]) of the available processors (null for
+     * all of them)
+     * @return
+     */
+    public int getThreads(Integer threads, Double share) {
+        if (threads != null && threads > 0) {
+            return threads;
+        }
+        int ncpus = getAvailableCpus();
+        if (share != null && share > 0 && share < 1) {
+            return Math.max(1, (int) Math.round(ncpus * share));
+        }
+        return ncpus;
+    }
+
+    private double getQuota() {
+        String max = readFirstLine(CGROUP2_MAX);
+        if (max != null) {
+            return parseCpuMax(max);
+        }
+        String quota = readFirstLine(CGROUP1_QUOTA), period = readFirstLine(CGROUP1_PERIOD);
+        if (quota != null && period != null) {
+            return parseCpuMax(quota + " " + period);
+        }
+        return -1;
+    }
+
+    private int getAffinity() {
+        try {
+            if (Files.isReadable(STATUS)) {
+                for (String line : Files.readAllLines(STATUS, StandardCharsets.UTF_8)) {
+                    if (line.startsWith("Cpus_allowed_list:")) {
+                        return parseCpuList(line.substring(line.indexOf(':') + 1));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a cgroup quota ("quota period", with "max" or -1 for no quota).
+     *
+     * @param s
+     * @return The number of processors or -1 if there is no quota
+     */
+    double parseCpuMax(String s) {
+        String[] items = s.trim().split("\\s+");
+        if (items.length != 2 || items[0].equals("max")) {
+            return -1;
+        }
+        try {
+            double quota = Double.parseDouble(items[0]), period = Double.parseDouble(items[1]);
+            return quota > 0 && period > 0 ? quota / period : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a list of processors (0-3,8,10-11).
+     *
+     * @param s
+     * @return The number of processors or -1 if the list is invalid
+     */
+    int parseCpuList(String s) {
+        int result = 0;
+        try {
+            for (String item : s.trim().split(",")) {
+                if (item.isEmpty()) {
+                    continue;
+                }
+                int sep = item.indexOf('-');
+                if (sep < 0) {
+                    Integer.parseInt(item.trim());
+                    result++;
+                } else {
+                    result += Integer.parseInt(item.substring(sep + 1).trim()) - Integer.parseInt(item.substring(0, sep).trim()) + 1;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        return result > 0 ? result : -1;
+    }
+
+    private String readFirstLine(Path file) {
+        try {
+            if (Files.isReadable(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                return lines.isEmpty() ? null : lines.get(0);
+            }
+        } catch (IOException | RuntimeException ex) {
+        }
+        return null;
+    }
+}
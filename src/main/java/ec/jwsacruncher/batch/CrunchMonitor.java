@@ -0,0 +1,324 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live status of the crunch, exposed through JMX. The worker threads only
+ * update striped counters and a concurrent set of the items in progress; the
+ * rates are updated every tick (by the first thread that finishes an item or
+ * reads a rate after the end of the tick) and the slowest item is computed
+ * when the attributes are read.
+ */
+@lombok.extern.java.Log
+public final class CrunchMonitor implements CrunchMonitorMBean {
+
+    public static final String NAME = "ec.jwsacruncher:type=CrunchMonitor";
+
+    private static final CrunchMonitor INSTANCE = new CrunchMonitor(System::nanoTime);
+    private static volatile boolean registered;
+
+    /**
+     * @return The monitor of the JVM
+     */
+    public static CrunchMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the monitor in the platform MBean server (once) and resets
+     * its counters, rates and cancellation. Should be called at the start of
+     * each run.
+     *
+     * @return The monitor of the JVM
+     */
+    public static CrunchMonitor start() {
+        if (!registered) {
+            synchronized (CrunchMonitor.class) {
+                if (!registered) {
+                    try {
+                        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                        ObjectName name = new ObjectName(NAME);
+                        if (!server.isRegistered(name)) {
+                            server.registerMBean(INSTANCE, name);
+                        }
+                    } catch (JMException | RuntimeException ex) {
+                        log.warning("Monitor not registered: " + ex.getMessage());
+                    }
+                    registered = true;
+                }
+            }
+        }
+        INSTANCE.reset();
+        return INSTANCE;
+    }
+
+    private static final long TICK = TimeUnit.SECONDS.toNanos(5);
+
+    private final LongSupplier clock;
+    private final LongAdder done = new LongAdder(), failed = new LongAdder(), pending = new LongAdder(), uncounted = new LongAdder();
+    private final Set<InFlight> inFlight = ConcurrentHashMap.newKeySet();
+    private final Ewma m1 = new Ewma(1), m5 = new Ewma(5);
+    private volatile String processing, bundle;
+    private volatile ExecutorService compute, io;
+    private volatile boolean cancelled;
+    private volatile long lastTick;
+
+    CrunchMonitor(LongSupplier clock) {
+        this.clock = clock;
+        this.lastTick = clock.getAsLong();
+    }
+
+    /**
+     * Forgets the counters, the rates and the cancellation of the previous run.
+     */
+    synchronized void reset() {
+        done.reset();
+        failed.reset();
+        pending.reset();
+        uncounted.reset();
+        inFlight.clear();
+        m1.reset();
+        m5.reset();
+        processing = null;
+        bundle = null;
+        compute = null;
+        io = null;
+        cancelled = false;
+        lastTick = clock.getAsLong();
+    }
+
+    /**
+     * Called when the estimation of a multi-processing starts.
+     *
+     * @param name
+     * @param size The number of items to estimate
+     * @param executors
+     */
+    public void startProcessing(String name, int size, SaExecutors executors) {
+        processing = name;
+        pending.add(size);
+        if (executors != null) {
+            compute = executors.getCompute();
+            io = executors.getIo();
+        }
+    }
+
+    void startBundle(String name) {
+        bundle = name;
+    }
+
+    /**
+     * Called for the items that are not estimated (restored bundles) or that
+     * are estimated twice (fallbacks).
+     */
+    void addPending(int n) {
+        pending.add(n);
+    }
+
+    /**
+     * Called by a worker thread before the estimation of an item.
+     *
+     * @return The token of the estimation
+     */
+    Object started(String name) {
+        InFlight item = new InFlight(name, clock.getAsLong());
+        inFlight.add(item);
+        return item;
+    }
+
+    /**
+     * Called by a worker thread after the estimation of an item.
+     */
+    void finished(Object token, boolean success) {
+        // the items of the previous ticks are counted before this one
+        if (clock.getAsLong() - lastTick >= TICK) {
+            tick();
+        }
+        inFlight.remove(token);
+        (success ? done : failed).increment();
+        pending.decrement();
+        uncounted.increment();
+    }
+
+    @Override
+    public String getCurrentProcessing() {
+        return processing;
+    }
+
+    @Override
+    public String getCurrentBundle() {
+        return bundle;
+    }
+
+    @Override
+    public long getItemsDone() {
+        return done.sum();
+    }
+
+    @Override
+    public long getItemsFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getItemsPending() {
+        return Math.max(0, pending.sum());
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        tick();
+        return m1.getRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        tick();
+        return m5.getRate();
+    }
+
+    @Override
+    public int getEstimationQueueDepth() {
+        return getQueueDepth(compute);
+    }
+
+    @Override
+    public int getIoQueueDepth() {
+        return getQueueDepth(io);
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String getSlowestInFlight() {
+        InFlight slowest = null;
+        for (InFlight o : inFlight) {
+            if (slowest == null || o.start < slowest.start) {
+                slowest = o;
+            }
+        }
+        if (slowest == null) {
+            return null;
+        }
+        return slowest.name + " (" + TimeUnit.NANOSECONDS.toSeconds(clock.getAsLong() - slowest.start) + "s)";
+    }
+
+    @Override
+    public long getHeapUsed() {
+        return getHeap().getUsed();
+    }
+
+    @Override
+    public long getHeapMax() {
+        return getHeap().getMax();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void cancel() {
+        log.info("Crunch cancelled through JMX");
+        cancelled = true;
+    }
+
+    private static MemoryUsage getHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+    private static int getQueueDepth(ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    /**
+     * Updates the rates with the items estimated since the last tick. As the
+     * workers tick before counting an item, the uncounted items belong to
+     * the first elapsed tick and the next ones are empty.
+     */
+    private synchronized void tick() {
+        long now = clock.getAsLong();
+        long n = (now - lastTick) / TICK;
+        if (n <= 0) {
+            return;
+        }
+        lastTick += n * TICK;
+        long count = uncounted.sumThenReset();
+        for (long i = 0; i < n; ++i) {
+            m1.update(i == 0 ? count : 0);
+            m5.update(i == 0 ? count : 0);
+        }
+    }
+
+    @lombok.AllArgsConstructor
+    private static final class InFlight {
+
+        final String name;
+        final long start;
+    }
+
+    /**
+     * Exponentially weighted moving average of the number of items per
+     * second, updated every tick.
+     */
+    private static final class Ewma {
+
+        private final double alpha;
+        private volatile double rate;
+        private boolean initialized;
+
+        Ewma(int minutes) {
+            alpha = 1 - Math.exp(-(double) TICK / TimeUnit.MINUTES.toNanos(minutes));
+        }
+
+        void update(long count) {
+            double instant = count / ((double) TICK / TimeUnit.SECONDS.toNanos(1));
+            if (initialized) {
+                rate += alpha * (instant - rate);
+            } else {
+                rate = instant;
+                initialized = true;
+            }
+        }
+
+        double getRate() {
+            return rate;
+        }
+
+        void reset() {
+            rate = 0;
+            initialized = false;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+/**
+ * Management interface of the crunch, registered in the platform MBean server
+ * as {@value CrunchMonitor#NAME}.
+ */
+public interface CrunchMonitorMBean {
+
+    /**
+     * @return The name of the multi-processing that is being crunched (the
+     * last one started when several multi-processings are crunched in
+     * parallel)
+     */
+    String getCurrentProcessing();
+
+    /**
+     * @return The name of the bundle that is being estimated
+     */
+    String getCurrentBundle();
+
+    long getItemsDone();
+
+    long getItemsFailed();
+
+    /**
+     * @return The number of items of the started multi-processings that are
+     * not estimated yet
+     */
+    long getItemsPending();
+
+    /**
+     * @return The number of items per second, exponentially weighted over
+     * the last minute
+     */
+    double getOneMinuteRate();
+
+    /**
+     * @return The number of items per second, exponentially weighted over
+     * the last five minutes
+     */
+    double getFiveMinuteRate();
+
+    /**
+     * @return The number of estimations waiting for a thread
+     */
+    int getEstimationQueueDepth();
+
+    /**
+     * @return The number of data queries and output writes waiting for a
+     * thread (0 if they are executed in the calling threads)
+     */
+    int getIoQueueDepth();
+
+    /**
+     * @return The number of estimations in progress
+     */
+    int getInFlight();
+
+    /**
+     * @return The series whose estimation has been running for the longest
+     * time, with its duration, or null
+     */
+    String getSlowestInFlight();
+
+    long getHeapUsed();
+
+    long getHeapMax();
+
+    boolean isCancelled();
+
+    /**
+     * Cancels the run: the items that are not started yet are skipped and
+     * the current multi-processing is not saved.
+     */
+    void cancel();
+}
@@ -26,6 +26,13 @@ import java.util.Collection;
  * @author Kristof Bayens
  */
 public interface ISaBundle {
+    String getName();
     Collection<SaItem> getItems();
     void flush(ISaBatchFeedback fb);
+    /**
+     * Replaces an item of the bundle.
+     * @param item
+     * @param nitem The new item or null to remove the item from the bundle
+     */
+    void replace(SaItem item, SaItem nitem);
 }
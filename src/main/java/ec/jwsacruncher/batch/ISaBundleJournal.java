@@ -0,0 +1,42 @@
+/*
+* Copyright 2013 National Bank of Belgium
+*
+* Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+* by the European Commission - subsequent versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in writing, software 
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and 
+* limitations under the Licence.
+*/
+
+
+package ec.jwsacruncher.batch;
+
+/**
+ * Keeps track of the bundles that have already been processed and flushed,
+ * so that an interrupted batch can be resumed.
+ */
+public interface ISaBundleJournal {
+
+    /**
+     * Restores the items of a bundle that has been completed in a previous
+     * run.
+     *
+     * @param bundle
+     * @return true if the bundle has been restored and must be skipped
+     */
+    boolean restore(ISaBundle bundle);
+
+    /**
+     * Records a bundle that has been processed and flushed.
+     *
+     * @param bundle
+     */
+    void store(ISaBundle bundle);
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import ec.tss.sa.SaItem;
+import ec.tstoolkit.algorithm.CompositeResults;
+
+@FunctionalInterface
+public interface ISaItemListener {
+
+    /**
+     * Called (concurrently, from the estimation threads) as soon as the
+     * estimation of an item is finished.
+     *
+     * @param index Position of the item in the batch
+     * @param item
+     * @param results The results or null if the estimation failed
+     */
+    void processed(int index, SaItem item, CompositeResults results);
+
+    /**
+     * Called when a bundle has been flushed. A bundle restored from a
+     * checkpoint is not flushed.
+     *
+     * @param bundle The name of the bundle
+     * @param first Position of the first item of the bundle in the batch
+     * @param count Number of items of the bundle
+     */
+    default void flushed(String bundle, int first, int count) {
+    }
+
+    /**
+     * Creates a listener that notifies this listener, then another one.
+     *
+     * @param next
+     * @return
+     */
+    default ISaItemListener andThen(ISaItemListener next) {
+        ISaItemListener first = this;
+        return new ISaItemListener() {
+            @Override
+            public void processed(int index, SaItem item, CompositeResults results) {
+                first.processed(index, item, results);
+                next.processed(index, item, results);
+            }
+
+            @Override
+            public void flushed(String bundle, int start, int count) {
+                first.flushed(bundle, start, count);
+                next.flushed(bundle, start, count);
+            }
+        };
+    }
+}
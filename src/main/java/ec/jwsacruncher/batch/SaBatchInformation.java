@@ -18,22 +18,40 @@
 
 package ec.jwsacruncher.batch;
 
+import ec.jwsacruncher.core.JfrEvents;
+import ec.tss.ITsProvider;
+import ec.tss.Ts;
+import ec.tss.TsFactory;
+import ec.tss.TsInformation;
 import ec.tss.TsInformationType;
+import ec.tss.TsStatus;
+import ec.tss.sa.ISaOutputFactory;
 import ec.tss.sa.SaItem;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 
 /**
  *
  * @author Kristof Bayens
  */
+@lombok.extern.java.Log
 public class SaBatchInformation implements ISaBatchInformation {
     private String name_;
     private SaItem[] items_;
     private int bundlesize_;
     private ISaBundle[] bundles_;
+    private List<ISaOutputFactory> outputs_;
+    private ExecutorService ioexecutor_;
+    private boolean lazydata_;
+    private boolean compress_ = true;
 
     public SaBatchInformation(int bundlesize) {
         bundlesize_ = bundlesize;
@@ -58,6 +76,55 @@ public class SaBatchInformation implements ISaBatchInformation {
         items_ = list.toArray(new SaItem[list.size()]);
     }
 
+    public List<ISaOutputFactory> getOutputs() {
+        return outputs_;
+    }
+
+    public void setOutputs(List<ISaOutputFactory> value) {
+        outputs_ = value;
+    }
+
+    public ExecutorService getIoExecutor() {
+        return ioexecutor_;
+    }
+
+    /**
+     * Sets the executor of the I/O-bound tasks (data queries and output
+     * writes). These tasks are executed in the calling thread if null.
+     * @param value
+     */
+    public void setIoExecutor(ExecutorService value) {
+        ioexecutor_ = value;
+    }
+
+    public boolean isLazyData() {
+        return lazydata_;
+    }
+
+    /**
+     * Defers the loading of the data of the items until their bundle is
+     * processed. The series are fetched from their providers when the batch
+     * starts (so that a caching provider can keep them off the heap) and they
+     * are only materialised in the items of the current bundle.
+     * @param value
+     */
+    public void setLazyData(boolean value) {
+        lazydata_ = value;
+    }
+
+    public boolean isCompress() {
+        return compress_;
+    }
+
+    /**
+     * Compresses the items of the bundles once they are flushed (default).
+     * @param value
+     * @see SaBundle#setCompress(boolean)
+     */
+    public void setCompress(boolean value) {
+        compress_ = value;
+    }
+
     @Override
     public boolean open() {
         return true;
@@ -65,11 +132,13 @@ public class SaBatchInformation implements ISaBatchInformation {
 
     @Override
     public Iterator<ISaBundle> start() {
-        for (int i = 0; i< items_.length; ++i)
-            items_[i].getTs().query(TsInformationType.Data);
+        if (lazydata_)
+            prefetch();
+        else
+            query(Arrays.asList(items_));
 
         if (bundlesize_ == 0)
-            bundles_ = new ISaBundle[] { new SaBundle(name_, Arrays.asList(items_)) };
+            bundles_ = new ISaBundle[] { newBundle(name_, Arrays.asList(items_)) };
         else {
             int n = items_.length;
             int nb = 1 + (n - 1) / bundlesize_;
@@ -85,11 +154,84 @@ public class SaBatchInformation implements ISaBatchInformation {
                 SaItem[] items = new SaItem[Math.min(bundlesize_, n - j)];
                 for (int k = 0; k < items.length; ++k)
                     items[k] = items_[j + k];
-                bundles_[i] = new SaBundle(m, Arrays.asList(items));
+                bundles_[i] = newBundle(m, Arrays.asList(items));
             }
         }
-        Iterable<ISaBundle> bundles = Arrays.asList(bundles_);
-        return bundles.iterator();
+        Iterator<ISaBundle> bundles = Arrays.asList(bundles_).iterator();
+        if (!lazydata_)
+            return bundles;
+        return new Iterator<ISaBundle>() {
+            @Override
+            public boolean hasNext() {
+                return bundles.hasNext();
+            }
+
+            @Override
+            public ISaBundle next() {
+                ISaBundle bundle = bundles.next();
+                query(bundle.getItems());
+                return bundle;
+            }
+        };
+    }
+
+    private SaBundle newBundle(String name, Collection<SaItem> items) {
+        SaBundle bundle = new SaBundle(name, items, outputs_, ioexecutor_);
+        bundle.setCompress(compress_);
+        return bundle;
+    }
+
+    private void query(Collection<SaItem> items) {
+        List<Callable<Void>> tasks = new ArrayList<>(items.size());
+        for (SaItem item : items) {
+            tasks.add(() -> {
+                Object event = JfrEvents.begin(JfrEvents.Type.QUERY);
+                item.getTs().query(TsInformationType.Data);
+                JfrEvents.commit(event, item.getTs().getName(), item.getTs().getMoniker().getSource());
+                return null;
+            });
+        }
+        run(tasks);
+    }
+
+    private void prefetch() {
+        List<Callable<Void>> tasks = new ArrayList<>(items_.length);
+        for (SaItem item : items_) {
+            Ts ts = item.getTs();
+            if (ts.hasData() != TsStatus.Undefined || ts.getMoniker().getSource() == null)
+                continue;
+            ITsProvider provider = TsFactory.instance.getProvider(ts.getMoniker().getSource());
+            if (provider != null) {
+                tasks.add(() -> {
+                    Object event = JfrEvents.begin(JfrEvents.Type.QUERY);
+                    provider.get(new TsInformation(ts.getRawName(), ts.getMoniker(), TsInformationType.Data));
+                    JfrEvents.commit(event, ts.getRawName(), ts.getMoniker().getSource());
+                    return null;
+                });
+            }
+        }
+        run(tasks);
+    }
+
+    private void run(List<Callable<Void>> tasks) {
+        if (ioexecutor_ == null) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception ex) {
+                    log.log(Level.WARNING, "Data query failed", ex);
+                }
+            }
+            return;
+        }
+        try {
+            for (Future<Void> future : ioexecutor_.invokeAll(tasks))
+                future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            log.log(Level.WARNING, "Data query failed", ex.getCause());
+        }
     }
 
     @Override
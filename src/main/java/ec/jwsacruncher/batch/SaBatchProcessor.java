@@ -17,16 +17,30 @@
 package ec.jwsacruncher.batch;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ec.jwsacruncher.core.JfrEvents;
+import ec.jwsacruncher.core.SaItems;
+import ec.jwsacruncher.core.WarmStart;
 import ec.tss.sa.SaItem;
 import ec.tstoolkit.algorithm.CompositeResults;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
 
 /**
  *
@@ -36,12 +50,189 @@ public class SaBatchProcessor {
 
     ISaBatchInformation info_;
     ISaBatchFeedback feedback_;
+    ExecutorService executor_;
+    ISaBundleJournal journal_;
+    long timeout_;
+    UnaryOperator<SaItem> fallback_;
+    UnaryOperator<SaItem> coldStart_;
+    final Map<SaItem, SaItem> restarts_ = new ConcurrentHashMap<>();
+    final Map<SaItem, SaItem> replacements_ = new ConcurrentHashMap<>();
+    SaBatchReport report_;
+    boolean compress_;
+    ISaItemListener listener_;
+    BooleanSupplier cancelled_;
+    CrunchMonitor monitor_;
+    int offset_;
 //    SaProcessing processing_;
-    private final String QUERY = "Loading information...", PROCESS = "Processing...", FLUSH = "Flushing bundle...", OPEN = "Opening...", CLOSE = "Closing...", GENERATEOUTPUT = "Generate Output";
+    private final String QUERY = "Loading information...", PROCESS = "Processing...", FLUSH = "Flushing bundle...", OPEN = "Opening...", CLOSE = "Closing...", GENERATEOUTPUT = "Generate Output", RESTORE = "Restoring bundle from checkpoint...", TIMEOUT = " timed out", FALLBACK = " processed with the fallback specification", RESTARTED = " processed with a cold start", CANCELLED = " cancelled";
 
     public SaBatchProcessor(ISaBatchInformation info, ISaBatchFeedback fb) {
+        this(info, fb, null);
+    }
+
+    /**
+     *
+     * @param info
+     * @param fb
+     * @param executor A shared executor that is not shut down by this
+     * processor; a new executor is created for each bundle if null
+     */
+    public SaBatchProcessor(ISaBatchInformation info, ISaBatchFeedback fb, ExecutorService executor) {
         info_ = info;
         feedback_ = fb;
+        executor_ = executor;
+    }
+
+    public ISaBundleJournal getJournal() {
+        return journal_;
+    }
+
+    public void setJournal(ISaBundleJournal journal) {
+        journal_ = journal;
+    }
+
+    public long getTimeout() {
+        return timeout_;
+    }
+
+    /**
+     * Sets the time budget of the estimation of an item. The items that
+     * exceed it are cancelled and removed from their bundle (or replaced by
+     * the fallback item). Note that the estimation routines don't check for
+     * interruption, so the thread of a cancelled item stays busy until the
+     * estimation ends. That's why the unprocessed items are estimated on
+     * copies, which replace them in their bundle only when they are estimated
+     * in time (see getReplacements): a cancelled estimation only modifies an
+     * abandoned copy.
+     *
+     * @param timeout The budget or 0 for no limit
+     * @param unit
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        timeout_ = unit.toMillis(timeout);
+    }
+
+    public UnaryOperator<SaItem> getFallback() {
+        return fallback_;
+    }
+
+    /**
+     * Sets the function that provides the retry of an item that exceeded its
+     * time budget (typically the same series with a cheaper specification).
+     *
+     * @param fallback The function, which may return null if there is no
+     * retry for a given item
+     */
+    public void setFallback(UnaryOperator<SaItem> fallback) {
+        fallback_ = fallback;
+    }
+
+    public UnaryOperator<SaItem> getColdStart() {
+        return coldStart_;
+    }
+
+    /**
+     * Sets the function that provides the cold start of an item whose
+     * estimation was initialised with the parameters of a previous run (warm
+     * start). When the estimation of such an item fails or doesn't converge
+     * (see WarmStart.isConverged), the cold item is estimated in the same task
+     * and it replaces the warm item in its bundle if its fit is better. The
+     * function is called concurrently, so it should not have side effects.
+     *
+     * @param coldStart The function, which returns null for the items that
+     * were not warm-started
+     */
+    public void setColdStart(UnaryOperator<SaItem> coldStart) {
+        coldStart_ = coldStart;
+    }
+
+    /**
+     * Gets the warm-started items that have been re-estimated from scratch.
+     *
+     * @return The cold items, by warm item
+     */
+    public Map<SaItem, SaItem> getRestarts() {
+        return Collections.unmodifiableMap(restarts_);
+    }
+
+    /**
+     * Gets the items that have been replaced in their bundle by another
+     * estimated item: the cold starts and the copies estimated with a time
+     * budget (but not the fallback items).
+     *
+     * @return The items of the bundles, by initial item
+     */
+    public Map<SaItem, SaItem> getReplacements() {
+        return Collections.unmodifiableMap(replacements_);
+    }
+
+    /**
+     * Sets the condition that cancels the processing. When it becomes true,
+     * the items that are not started yet are skipped, the current bundle is
+     * not flushed and the next bundles are not processed. The bundles that
+     * have already been flushed are complete.
+     *
+     * @param cancelled
+     */
+    public void setCancelled(BooleanSupplier cancelled) {
+        cancelled_ = cancelled;
+    }
+
+    public boolean isCancelled() {
+        return cancelled_ != null && cancelled_.getAsBoolean();
+    }
+
+    public CrunchMonitor getMonitor() {
+        return monitor_;
+    }
+
+    /**
+     * Sets the monitor that is updated by the worker threads.
+     *
+     * @param monitor
+     */
+    public void setMonitor(CrunchMonitor monitor) {
+        monitor_ = monitor;
+    }
+
+    public SaBatchReport getReport() {
+        return report_;
+    }
+
+    /**
+     * Sets the report that collects the outcome of every processed item.
+     *
+     * @param report
+     */
+    public void setReport(SaBatchReport report) {
+        report_ = report;
+    }
+
+    public boolean isCompress() {
+        return compress_;
+    }
+
+    /**
+     * Compresses the items as soon as they are estimated, which releases
+     * their results. Should only be used when the bundles have no output.
+     *
+     * @param compress
+     */
+    public void setCompress(boolean compress) {
+        compress_ = compress;
+    }
+
+    public ISaItemListener getItemListener() {
+        return listener_;
+    }
+
+    /**
+     * Sets the listener that is notified as soon as an item is estimated.
+     *
+     * @param listener
+     */
+    public void setItemListener(ISaItemListener listener) {
+        listener_ = listener;
     }
 
     public boolean open() {
@@ -60,22 +251,50 @@ public class SaBatchProcessor {
 //            return false;
 
         Iterator<ISaBundle> iter = info_.start();
+        offset_ = 0;
         while (iter.hasNext()) {
+            if (isCancelled()) {
+                break;
+            }
             ISaBundle current = iter.next();
-            Collection<SaItem> items = current.getItems();
+            int size = current.getItems().size();
+            if (journal_ != null && journal_.restore(current)) {
+                if (feedback_ != null) {
+                    feedback_.showAction(RESTORE);
+                }
+                if (monitor_ != null) {
+                    monitor_.addPending(-size);
+                }
+                offset_ += size;
+                continue;
+            }
 //            processing_.addAll(items);
-            compute(items);
+            if (monitor_ != null) {
+                monitor_.startBundle(current.getName());
+            }
+            compute(current);
+            offset_ += size;
+            if (isCancelled()) {
+                // the bundle may contain unprocessed items
+                break;
+            }
             if (feedback_ != null) {
                 feedback_.showAction(FLUSH);
             }
             generateOutput();
             current.flush(feedback_);
+            if (listener_ != null) {
+                listener_.flushed(current.getName(), offset_ - size, size);
+            }
+            if (journal_ != null) {
+                journal_.store(current);
+            }
             //SaManager.instance.remove(items);
         }
 
 
         info_.close();
-        return true;
+        return !isCancelled();
     }
 
     public void generateOutput() {
@@ -84,18 +303,80 @@ public class SaBatchProcessor {
         }
     }
 
-    private List<Callable<String>> createTasks(Collection<SaItem> items) {
+    /**
+     * Creates the estimation tasks of some items.
+     *
+     * @param items The items of the bundle
+     * @param targets The items that are actually estimated (the items
+     * themselves or their copies), in the same order
+     */
+    private List<Callable<String>> createTasks(final String bundle, List<SaItem> items, List<SaItem> targets, int first, final SaItemOutcome.Status success) {
         List<Callable<String>> result = new ArrayList(items.size());
         if (!items.isEmpty()) {
-            for (final SaItem o : items) {
+            for (int i = 0; i < items.size(); ++i) {
+                final SaItem origin = items.get(i), o = targets.get(i);
+                final int pos = first + i;
                 result.add(new Callable<String>() {
                     @Override
                     public String call() throws Exception {
-                        CompositeResults result = o.process();
-                        String rslt = (result == null ? " failed" : " processed");
+                        if (isCancelled()) {
+                            return CANCELLED;
+                        }
+                        long start = System.nanoTime();
+                        Object event = JfrEvents.begin(JfrEvents.Type.ESTIMATION);
+                        Object token = monitor_ != null ? monitor_.started(o.getTs().getName()) : null;
+                        SaItem item = o;
+                        CompositeResults result = null;
+                        RuntimeException error = null;
+                        try {
+                            result = o.process();
+                        } catch (RuntimeException ex) {
+                            error = ex;
+                        }
+                        if (coldStart_ != null && !WarmStart.isConverged(result)) {
+                            SaItem cold = coldStart_.apply(origin);
+                            if (cold != null) {
+                                CompositeResults cresult = null;
+                                RuntimeException cerror = null;
+                                try {
+                                    cresult = cold.process();
+                                } catch (RuntimeException ex) {
+                                    cerror = ex;
+                                }
+                                // the warm fit is kept if it is better
+                                if (result == null || WarmStart.isBetter(cresult, result)) {
+                                    item = cold;
+                                    result = cresult;
+                                    error = cerror;
+                                    restarts_.put(origin, cold);
+                                }
+                            }
+                        }
+                        String rslt = (result == null ? " failed" : item != o ? RESTARTED : " processed");
+                        if (token != null) {
+                            monitor_.finished(token, result != null);
+                        }
                         if (feedback_ != null) {
                             feedback_.showItem(o.getTs().getName(), rslt);
                         }
+                        // a cancelled (timed out) item has already been reported
+                        boolean cancelled = Thread.currentThread().isInterrupted();
+                        if ((report_ != null || event != null) && !cancelled) {
+                            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                            SaItemOutcome.Status status = result == null ? SaItemOutcome.Status.FAILED
+                                    : item != o ? SaItemOutcome.Status.RESTARTED : success;
+                            SaItemOutcome outcome = SaItemOutcome.of(bundle, item, status, duration, error);
+                            if (report_ != null) {
+                                report_.add(outcome);
+                            }
+                            JfrEvents.commit(event, outcome.getName(), outcome.getMethod(), status);
+                        }
+                        if (listener_ != null && !cancelled) {
+                            listener_.processed(pos, item, result);
+                        }
+                        if (compress_) {
+                            item.compress();
+                        }
                         return rslt;
                     }
                 });
@@ -103,21 +384,167 @@ public class SaBatchProcessor {
         }
         return result;
     }
-    private static final int NBR_EXECUTORS = Runtime.getRuntime().availableProcessors();
+    private static final int NBR_EXECUTORS = CpuBudget.getAvailableCpus();
     private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true).setPriority(Thread.MIN_PRIORITY).build();
 
-    private void compute(Collection<SaItem> items) {
+    public static ExecutorService newExecutorService() {
+        return Executors.newFixedThreadPool(NBR_EXECUTORS, THREAD_FACTORY);
+    }
+
+    /**
+     *
+     * @param nthreads Number of threads
+     * @param priority Priority of the threads (see Thread.setPriority)
+     * @return
+     */
+    public static ExecutorService newExecutorService(int nthreads, int priority) {
+        ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true).setPriority(priority).build();
+        return Executors.newFixedThreadPool(nthreads, factory);
+    }
+
+    private void compute(ISaBundle bundle) {
 
-        List<Callable<String>> tasks = createTasks(items);
-        if (tasks.isEmpty()) {
+        List<SaItem> items = new ArrayList<>(bundle.getItems());
+        if (items.isEmpty()) {
             return;
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(NBR_EXECUTORS, THREAD_FACTORY);
+        List<SaItem> targets = items;
+        if (timeout_ > 0) {
+            // the timed-out estimations go on in the background, on the copies
+            targets = new ArrayList<>(items.size());
+            for (SaItem item : items) {
+                targets.add(item.getStatus().isProcessed() ? item : SaItems.withEstimationSpecification(item, item.getEstimationSpecification()));
+            }
+        }
+        List<Callable<String>> tasks = createTasks(bundle.getName(), items, targets, offset_, SaItemOutcome.Status.PROCESSED);
+        ExecutorService executorService = executor_ != null ? executor_ : newExecutorService();
         try {
-            executorService.invokeAll(tasks);
+            if (timeout_ <= 0) {
+                List<Future<String>> futures = executorService.invokeAll(tasks);
+                for (int i = 0; i < futures.size(); ++i) {
+                    try {
+                        futures.get(i).get();
+                    } catch (ExecutionException ex) {
+                        // errors that are not caught by the task itself
+                        if (report_ != null) {
+                            report_.add(SaItemOutcome.of(bundle.getName(), items.get(i), SaItemOutcome.Status.FAILED, 0, ex.getCause()));
+                        }
+                    }
+                }
+                replace(bundle, items, targets, Collections.emptyList());
+                return;
+            }
+            List<SaItem> late = compute(executorService, bundle.getName(), items, tasks);
+            replace(bundle, items, targets, late);
+            for (SaItem item : late) {
+                SaItem nitem = fallback_ != null ? fallback_.apply(item) : null;
+                if (nitem != null) {
+                    if (monitor_ != null) {
+                        monitor_.addPending(1);
+                    }
+                    // the fallback item is new, so it doesn't need a copy
+                    List<SaItem> retry = Collections.singletonList(nitem);
+                    if (compute(executorService, bundle.getName(), retry, createTasks(bundle.getName(), retry, retry, offset_ + items.indexOf(item), SaItemOutcome.Status.FALLBACK)).isEmpty()) {
+                        if (feedback_ != null) {
+                            feedback_.showItem(item.getTs().getName(), FALLBACK);
+                        }
+                    } else {
+                        nitem = null;
+                    }
+                }
+                bundle.replace(item, nitem);
+            }
         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         } finally {
-            executorService.shutdown();
+            if (executorService != executor_) {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Replaces the items of a bundle by the items that have actually been
+     * estimated: their cold start or their copy.
+     *
+     * @param late The items that exceeded their budget, which are not
+     * replaced
+     */
+    private void replace(ISaBundle bundle, List<SaItem> items, List<SaItem> targets, List<SaItem> late) {
+        for (int i = 0; i < items.size(); ++i) {
+            SaItem item = items.get(i);
+            if (late.contains(item)) {
+                continue;
+            }
+            SaItem nitem = restarts_.getOrDefault(item, targets.get(i));
+            if (nitem != item) {
+                bundle.replace(item, nitem);
+                replacements_.put(item, nitem);
+            }
+        }
+    }
+
+    /**
+     * Computes the items with the time budget of this processor.
+     *
+     * @return The items that exceeded the budget
+     */
+    private List<SaItem> compute(ExecutorService executorService, String bundle, List<SaItem> items, List<Callable<String>> tasks) throws InterruptedException {
+        AtomicLongArray starts = new AtomicLongArray(tasks.size());
+        List<Future<String>> futures = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); ++i) {
+            final int pos = i;
+            final Callable<String> task = tasks.get(i);
+            futures.add(executorService.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    starts.set(pos, System.nanoTime());
+                    return task.call();
+                }
+            }));
+        }
+        List<SaItem> result = new ArrayList<>();
+        for (int i = 0; i < futures.size(); ++i) {
+            boolean done;
+            try {
+                done = await(futures.get(i), starts, i);
+            } catch (ExecutionException ex) {
+                // errors that are not caught by the task itself
+                done = true;
+                if (report_ != null) {
+                    report_.add(SaItemOutcome.of(bundle, items.get(i), SaItemOutcome.Status.FAILED, 0, ex.getCause()));
+                }
+            }
+            if (!done) {
+                futures.get(i).cancel(true);
+                result.add(items.get(i));
+                if (feedback_ != null) {
+                    feedback_.showItem(items.get(i).getTs().getName(), TIMEOUT);
+                }
+                if (report_ != null) {
+                    report_.add(SaItemOutcome.of(bundle, items.get(i), SaItemOutcome.Status.TIMEOUT, timeout_, null));
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean await(Future<String> future, AtomicLongArray starts, int pos) throws InterruptedException, ExecutionException {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(timeout_);
+        while (true) {
+            long start = starts.get(pos);
+            long wait = start == 0 ? timeout : start + timeout - System.nanoTime();
+            try {
+                future.get(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                return true;
+            } catch (TimeoutException ex) {
+                start = starts.get(pos);
+                if (start != 0 && System.nanoTime() - start >= timeout) {
+                    return false;
+                }
+            } catch (CancellationException ex) {
+                return true;
+            }
         }
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Outcomes of the items of a crunch. The outcomes are added concurrently by
+ * the estimation tasks (without locking).
+ */
+public final class SaBatchReport {
+
+    private final Queue<SaItemOutcome> outcomes = new ConcurrentLinkedQueue<>();
+
+    public void add(SaItemOutcome outcome) {
+        outcomes.add(outcome);
+    }
+
+    public List<SaItemOutcome> getOutcomes() {
+        return new ArrayList<>(outcomes);
+    }
+
+    public int size() {
+        return outcomes.size();
+    }
+
+    public Map<SaItemOutcome.Status, Integer> count() {
+        Map<SaItemOutcome.Status, Integer> result = new EnumMap<>(SaItemOutcome.Status.class);
+        for (SaItemOutcome.Status status : SaItemOutcome.Status.values()) {
+            result.put(status, 0);
+        }
+        outcomes.forEach(o -> result.merge(o.getStatus(), 1, Integer::sum));
+        return result;
+    }
+
+    /**
+     * @return The percentage of items that failed or timed out
+     */
+    public double getFailureRate() {
+        int n = 0, nfailed = 0;
+        for (SaItemOutcome o : outcomes) {
+            n++;
+            if (o.isFailure()) {
+                nfailed++;
+            }
+        }
+        return n == 0 ? 0 : 100.0 * nfailed / n;
+    }
+
+    /**
+     * Writes the outcomes in a csv file (one line by item).
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("bundle;series;status;method;duration(ms);exception;message\n");
+            for (SaItemOutcome o : outcomes) {
+                writer.write(String.join(";",
+                        field(o.getBundle()), field(o.getName()), o.getStatus().name(), field(o.getMethod()),
+                        Long.toString(o.getDurationMillis()), field(o.getException()), field(o.getMessage())));
+                writer.write('\n');
+            }
+        }
+    }
+
+    public String getSummary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(size()).append(" items");
+        count().forEach((status, n) -> {
+            if (n > 0) {
+                builder.append(", ").append(n).append(' ').append(status.name().toLowerCase());
+            }
+        });
+        return builder.toString();
+    }
+
+    private static String field(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s.replace(';', ',').replace('\n', ' ').replace('\r', ' ');
+    }
+}
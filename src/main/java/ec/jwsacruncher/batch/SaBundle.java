@@ -16,6 +16,7 @@
  */
 package ec.jwsacruncher.batch;
 
+import ec.jwsacruncher.core.JfrEvents;
 import ec.satoolkit.ISaSpecification;
 import ec.tss.sa.ISaOutputFactory;
 import ec.tss.sa.SaItem;
@@ -23,7 +24,13 @@ import ec.tss.sa.SaManager;
 import ec.tss.sa.documents.SaDocument;
 import ec.tstoolkit.algorithm.IOutput;
 import ec.tstoolkit.utilities.LinearId;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -33,10 +40,53 @@ public class SaBundle implements ISaBundle {
 
     private String name_;
     private Collection<SaItem> items_;
+    private List<ISaOutputFactory> outputs_;
+    private ExecutorService ioexecutor_;
+    private boolean compress_ = true;
 
     public SaBundle(String name, Collection<SaItem> items) {
+        this(name, items, null);
+    }
+
+    public SaBundle(String name, Collection<SaItem> items, List<ISaOutputFactory> outputs) {
+        this(name, items, outputs, null);
+    }
+
+    /**
+     *
+     * @param name
+     * @param items
+     * @param outputs The output factories used by this bundle; the factories
+     * registered in SaManager are used if null
+     * @param ioexecutor The executor on which the outputs are written
+     * concurrently; they are written one after the other if null
+     */
+    public SaBundle(String name, Collection<SaItem> items, List<ISaOutputFactory> outputs, ExecutorService ioexecutor) {
         name_ = name;
         items_ = items;
+        outputs_ = outputs;
+        ioexecutor_ = ioexecutor;
+    }
+
+    public boolean isCompress() {
+        return compress_;
+    }
+
+    /**
+     * Compresses the items once the bundle is flushed, which releases their
+     * results (default). The items that must keep their results (for
+     * instance when they are shared with other multi-processings) should not
+     * be compressed.
+     *
+     * @param compress
+     */
+    public void setCompress(boolean compress) {
+        compress_ = compress;
+    }
+
+    @Override
+    public String getName() {
+        return name_;
     }
 
     @Override
@@ -44,29 +94,74 @@ public class SaBundle implements ISaBundle {
         return items_;
     }
 
+    @Override
+    public void replace(SaItem item, SaItem nitem) {
+        List<SaItem> items = new ArrayList<>(items_.size());
+        for (SaItem o : items_) {
+            if (o != item)
+                items.add(o);
+            else if (nitem != null)
+                items.add(nitem);
+        }
+        items_ = items;
+    }
+
     @Override
     public void flush(ISaBatchFeedback fb) {
-        for (ISaOutputFactory fac : SaManager.instance.getOutput()) {
-            if (fac.isAvailable()) {
-                IOutput<SaDocument<ISaSpecification>> output = fac.create();
-                try {
-                    LinearId id = new LinearId(name_);
-                    output.start(id);
-                    for (SaItem item : items_) {
-                        output.process(item.toDocument());
-                    }
-                    output.end(id);
-                    if (fb != null)
-                        fb.showItem(output.getName(), "generated");
-                } catch (Exception err) {
-                    if (fb != null)
-                        fb.showItem(output.getName(), "failed: "+err.getMessage());
-                }
+        List<ISaOutputFactory> factories = new ArrayList<>();
+        for (ISaOutputFactory fac : outputs_ != null ? outputs_ : SaManager.instance.getOutput()) {
+            if (fac.isAvailable())
+                factories.add(fac);
+        }
+        // the documents (and their results) are shared by all the outputs
+        List<SaDocument<ISaSpecification>> docs = factories.isEmpty() ? Collections.emptyList() : toDocuments(items_);
+        List<Future<?>> pending = new ArrayList<>();
+        for (ISaOutputFactory fac : factories) {
+            if (ioexecutor_ == null)
+                write(fac, name_, docs, fb);
+            else
+                pending.add(ioexecutor_.submit(() -> write(fac, name_, docs, fb)));
+        }
+        try {
+            for (Future<?> future : pending)
+                future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // write() reports its own failures
+        }
+        if (compress_) {
+            for (SaItem item : items_) {
+                item.compress();
             }
+            System.gc();
         }
-        for (SaItem item : items_) {
-            item.compress();
+    }
+
+    static List<SaDocument<ISaSpecification>> toDocuments(Collection<SaItem> items) {
+        List<SaDocument<ISaSpecification>> result = new ArrayList<>(items.size());
+        for (SaItem item : items) {
+            result.add(item.toDocument());
+        }
+        return result;
+    }
+
+    static void write(ISaOutputFactory fac, String name, List<SaDocument<ISaSpecification>> docs, ISaBatchFeedback fb) {
+        IOutput<SaDocument<ISaSpecification>> output = fac.create();
+        Object event = JfrEvents.begin(JfrEvents.Type.FLUSH);
+        try {
+            LinearId id = new LinearId(name);
+            output.start(id);
+            for (SaDocument<ISaSpecification> doc : docs) {
+                output.process(doc);
+            }
+            output.end(id);
+            JfrEvents.commit(event, name, output.getName(), docs.size());
+            if (fb != null)
+                fb.showItem(output.getName(), "generated");
+        } catch (Exception err) {
+            if (fb != null)
+                fb.showItem(output.getName(), "failed: "+err.getMessage());
         }
-        System.gc();
     }
 }
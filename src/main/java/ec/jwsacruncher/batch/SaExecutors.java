@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors used by a crunch: a bounded pool of platform threads for the
+ * (CPU-bound) estimation and an optional executor for the I/O-bound tasks,
+ * i.e. the data queries of the providers and the output writes.
+ */
+@lombok.extern.java.Log
+public final class SaExecutors implements AutoCloseable {
+
+    public static SaExecutors of(int ioThreads, boolean virtualThreads) {
+        return of(CpuBudget.getAvailableCpus(), Thread.MIN_PRIORITY, ioThreads, virtualThreads);
+    }
+
+    /**
+     * Creates the executors of a crunch.
+     *
+     * @param threads Number of estimation threads
+     * @param priority Priority of the estimation threads
+     * @param ioThreads Number of threads used for the I/O-bound tasks; these
+     * tasks are executed in the calling thread if it is not positive and
+     * virtual threads are not requested
+     * @param virtualThreads Executes the I/O-bound tasks on virtual threads
+     * when the runtime supports them (Java 21+)
+     * @return
+     */
+    public static SaExecutors of(int threads, int priority, int ioThreads, boolean virtualThreads) {
+        ExecutorService io = null;
+        if (virtualThreads) {
+            io = newVirtualThreadExecutor();
+            if (io == null) {
+                log.info("Virtual threads are not available in this runtime; platform threads are used");
+            }
+        }
+        if (io == null && ioThreads > 0) {
+            io = Executors.newFixedThreadPool(ioThreads, IO_THREAD_FACTORY);
+        }
+        return new SaExecutors(SaBatchProcessor.newExecutorService(threads, priority), io);
+    }
+
+    private static final ThreadFactory IO_THREAD_FACTORY = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("io-%d").build();
+
+    private final ExecutorService compute;
+    private final ExecutorService io;
+
+    private SaExecutors(ExecutorService compute, ExecutorService io) {
+        this.compute = compute;
+        this.io = io;
+    }
+
+    /**
+     * @return The executor of the estimation
+     */
+    public ExecutorService getCompute() {
+        return compute;
+    }
+
+    /**
+     * @return The executor of the I/O-bound tasks or null if they are
+     * executed in the calling thread
+     */
+    public ExecutorService getIo() {
+        return io;
+    }
+
+    @Override
+    public void close() {
+        compute.shutdown();
+        if (io != null) {
+            io.shutdown();
+        }
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor() by reflection
+     * since the code is compiled against the Java 8 API.
+     *
+     * @return The executor or null if the runtime has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
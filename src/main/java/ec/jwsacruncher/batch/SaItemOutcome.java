@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import ec.satoolkit.ISaSpecification;
+import ec.tss.sa.SaItem;
+
+/**
+ * Outcome of the estimation of an item.
+ */
+@lombok.Value
+@lombok.AllArgsConstructor(staticName = "of")
+public class SaItemOutcome {
+
+    public enum Status {
+        PROCESSED, FAILED, TIMEOUT, FALLBACK,
+        /**
+         * Processed from scratch after the failure of a warm start
+         */
+        RESTARTED
+    }
+
+    String bundle;
+    String name;
+    Status status;
+    /**
+     * Family of the specification (TramoSeats, X13...)
+     */
+    String method;
+    long durationMillis;
+    /**
+     * Class of the exception or null
+     */
+    String exception;
+    String message;
+
+    public static SaItemOutcome of(String bundle, SaItem item, Status status, long durationMillis, Throwable error) {
+        return of(bundle, item.getTs().getName(), status, getMethod(item.getEstimationSpecification()), durationMillis,
+                error != null ? error.getClass().getName() : null,
+                error != null ? error.getMessage() : null);
+    }
+
+    public boolean isFailure() {
+        return status == Status.FAILED || status == Status.TIMEOUT;
+    }
+
+    private static String getMethod(ISaSpecification spec) {
+        if (spec == null) {
+            return null;
+        }
+        String name = spec.getClass().getSimpleName();
+        return name.endsWith("Specification") ? name.substring(0, name.length() - "Specification".length()) : name;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import ec.tss.sa.SaItem;
+import ec.tss.sa.output.BasicConfiguration;
+import ec.tss.sa.output.CsvInformationFormatter;
+import ec.tstoolkit.algorithm.CompositeResults;
+import ec.tstoolkit.algorithm.IProcResults;
+import ec.tstoolkit.algorithm.ProcessingInformation;
+import ec.tstoolkit.utilities.LinearId;
+import ec.tstoolkit.utilities.NamedObject;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matrix output (one line by item, one column by requested result) whose
+ * values are extracted as soon as the items are estimated, so that their
+ * results can be released immediately. Only the requested values of an item
+ * are kept, in the order of the items. The matrix of a bundle is written when
+ * the bundle is flushed, with the same formatter, file name and folder as
+ * the csv-matrix output (a bundle restored from a checkpoint keeps the matrix
+ * of the previous run). The whole bundle is needed because the columns
+ * depend on all its items (wildcards, formats of the results).
+ */
+public final class StreamingMatrixOutput implements ISaItemListener, Closeable {
+
+    private final File folder;
+    private final String fileName;
+    private final List<String> items;
+    private final ConcurrentNavigableMap<Integer, NamedObject<IProcResults>> rows = new ConcurrentSkipListMap<>();
+    private volatile IOException error;
+
+    /**
+     *
+     * @param folder The output folder
+     * @param fileName The name of the matrix files (without extension)
+     * @param items The requested results
+     */
+    public StreamingMatrixOutput(File folder, String fileName, List<String> items) {
+        this.folder = folder;
+        this.fileName = fileName;
+        this.items = new ArrayList<>(items);
+    }
+
+    @Override
+    public void processed(int index, SaItem item, CompositeResults results) {
+        rows.put(index, new NamedObject<>(item.toDocument().getName(), results != null ? project(results) : null));
+    }
+
+    @Override
+    public void flushed(String bundle, int first, int count) {
+        ConcurrentNavigableMap<Integer, NamedObject<IProcResults>> current = rows.subMap(first, first + count);
+        List<NamedObject<IProcResults>> records = new ArrayList<>(current.values());
+        current.clear();
+        if (error != null) {
+            return;
+        }
+        File bfolder = BasicConfiguration.folderFromContext(folder, new LinearId(bundle));
+        try {
+            Files.createDirectories(bfolder.toPath());
+            try (Writer writer = Files.newBufferedWriter(new File(bfolder, fileName + ".csv").toPath(), StandardCharsets.UTF_8)) {
+                new CsvInformationFormatter().formatResults(writer, records, items, true);
+            }
+        } catch (IOException ex) {
+            error = ex;
+        }
+    }
+
+    /**
+     * Releases the values of the bundles that have not been flushed.
+     *
+     * @throws IOException The first error raised while writing a matrix
+     */
+    @Override
+    public void close() throws IOException {
+        rows.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private IProcResults project(CompositeResults results) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (String name : items) {
+            String item = removeFormat(name);
+            if (isWildcard(item)) {
+                Pattern pattern = toPattern(item);
+                for (String key : results.getDictionary().keySet()) {
+                    if (pattern.matcher(key).matches()) {
+                        put(data, key, results);
+                    }
+                }
+            } else {
+                put(data, item, results);
+            }
+        }
+        return new Projection(data);
+    }
+
+    private static void put(Map<String, Object> data, String key, CompositeResults results) {
+        Object value = results.getData(key, Object.class);
+        if (value != null) {
+            data.put(key, value);
+        }
+    }
+
+    /**
+     * Removes the number of columns that may follow the name of a result
+     * (residuals.kurtosis:3), which is only used by the formatter.
+     */
+    private static String removeFormat(String item) {
+        int pos = item.lastIndexOf(':');
+        if (pos < 0 || pos == item.length() - 1) {
+            return item;
+        }
+        for (int i = pos + 1; i < item.length(); ++i) {
+            if (!Character.isDigit(item.charAt(i))) {
+                return item;
+            }
+        }
+        return item.substring(0, pos);
+    }
+
+    private static boolean isWildcard(String item) {
+        return item.indexOf('*') >= 0 || item.indexOf('?') >= 0;
+    }
+
+    private static Pattern toPattern(String wildcard) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < wildcard.length(); ++i) {
+            char c = wildcard.charAt(i);
+            if (c == '*' || c == '?') {
+                regex.append(Pattern.quote(wildcard.substring(start, i))).append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        return Pattern.compile(regex.append(Pattern.quote(wildcard.substring(start))).toString());
+    }
+
+    /**
+     * Requested values of an item.
+     */
+    @lombok.AllArgsConstructor
+    private static final class Projection implements IProcResults {
+
+        private final Map<String, Object> data;
+
+        @Override
+        public boolean contains(String id) {
+            return data.containsKey(id);
+        }
+
+        @Override
+        public Map<String, Class> getDictionary() {
+            Map<String, Class> result = new LinkedHashMap<>();
+            data.forEach((k, v) -> result.put(k, v.getClass()));
+            return result;
+        }
+
+        @Override
+        public <T> T getData(String id, Class<T> tclass) {
+            Object value = data.get(id);
+            return tclass.isInstance(value) ? tclass.cast(value) : null;
+        }
+
+        @Override
+        public List<ProcessingInformation> getProcessingInformation() {
+            return Collections.emptyList();
+        }
+    }
+}
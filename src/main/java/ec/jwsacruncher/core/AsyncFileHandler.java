@@ -0,0 +1,343 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Asynchronous file handler. The records are put in a bounded ring buffer and
+ * written by a background thread in a rotating set of files, so that the
+ * threads that log never wait for the disk. The records that don't fit in the
+ * buffer are dropped (and counted) and the messages that are repeated within
+ * a short interval are suppressed, with a summary of the number of suppressed
+ * records.
+ * <p>
+ * The handler is configured in the logging properties, with the prefix
+ * ec.jwsacruncher.core.AsyncFileHandler:
+ * <ul>
+ * <li>level, formatter, encoding: as for the other handlers (default ALL,
+ * SimpleFormatter)</li>
+ * <li>pattern, limit, count, append: as for the FileHandler (default
+ * %t/jwsacruncher_%u.log, 10 MB, 5 files, true)</li>
+ * <li>capacity: size of the buffer (default 8192 records)</li>
+ * <li>repeatInterval: interval in ms during which a repeated message is
+ * suppressed (default 10000 ms, 0 to disable)</li>
+ * </ul>
+ * A message is repeated if it has the same logger, level, (unformatted)
+ * message, parameters (compared by their hash code) and exception (class and
+ * message) as a previous record. The records, including the summaries, are
+ * only formatted by the background thread.
+ */
+public final class AsyncFileHandler extends Handler {
+
+    private static final String DEFAULT_PATTERN = "%t/jwsacruncher_%u.log";
+    private static final int DEFAULT_LIMIT = 10 * 1024 * 1024, DEFAULT_COUNT = 5, DEFAULT_CAPACITY = 8192;
+    private static final long DEFAULT_REPEAT_INTERVAL = 10000;
+    private static final int MAX_REPEATS = 1024;
+    private static final long POLL = 100;
+
+    private final FileHandler file;
+    private final BlockingQueue<LogRecord> queue;
+    private final long repeatInterval;
+    private final Map<String, Repeat> repeats = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a handler configured by the LogManager properties.
+     *
+     * @throws IOException
+     */
+    public AsyncFileHandler() throws IOException {
+        this(getProperty("pattern", DEFAULT_PATTERN),
+                getInt("limit", DEFAULT_LIMIT),
+                getInt("count", DEFAULT_COUNT),
+                Boolean.parseBoolean(getProperty("append", "true")),
+                getInt("capacity", DEFAULT_CAPACITY),
+                getLong("repeatInterval", DEFAULT_REPEAT_INTERVAL));
+        String level = getProperty("level", null);
+        if (level != null) {
+            try {
+                setLevel(Level.parse(level));
+            } catch (IllegalArgumentException ex) {
+                reportError("Invalid level " + level, ex, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+        String formatter = getProperty("formatter", null);
+        if (formatter != null) {
+            try {
+                setFormatter((Formatter) ClassLoader.getSystemClassLoader().loadClass(formatter).getDeclaredConstructor().newInstance());
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                reportError("Invalid formatter " + formatter, ex, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+        String encoding = getProperty("encoding", null);
+        if (encoding != null) {
+            setEncoding(encoding);
+        }
+    }
+
+    AsyncFileHandler(String pattern, int limit, int count, boolean append, int capacity, long repeatInterval) throws IOException {
+        this.file = new FileHandler(pattern, limit, count, append);
+        this.file.setLevel(Level.ALL);
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.repeatInterval = repeatInterval;
+        setLevel(Level.ALL);
+        setFormatter(new SimpleFormatter());
+        writer = new Thread(this::write, "jwsacruncher-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void setFormatter(Formatter formatter) {
+        super.setFormatter(formatter);
+        file.setFormatter(formatter);
+    }
+
+    @Override
+    public void setEncoding(String encoding) throws SecurityException, UnsupportedEncodingException {
+        super.setEncoding(encoding);
+        file.setEncoding(encoding);
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        long suppressed = suppress(record);
+        if (suppressed < 0) {
+            return;
+        }
+        // the source is inferred from the stack of the calling thread
+        record.getSourceClassName();
+        offer(record);
+        if (suppressed > 0) {
+            offer(summary(record, suppressed));
+        }
+    }
+
+    @Override
+    public void flush() {
+        file.flush();
+    }
+
+    /**
+     * Writes the pending records and closes the file.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        for (Map.Entry<String, Repeat> o : repeats.entrySet()) {
+            long n = o.getValue().suppressed.sumThenReset();
+            if (n > 0) {
+                file.publish(summary(o.getValue().record, n));
+            }
+        }
+        file.close();
+    }
+
+    /**
+     * @return The number of records that have been dropped because the buffer
+     * was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void offer(LogRecord record) {
+        if (!queue.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Checks if a record repeats a recent message.
+     *
+     * @return -1 if the record must be suppressed, otherwise the number of
+     * records suppressed since the previous occurrence of the message
+     */
+    private long suppress(LogRecord record) {
+        if (repeatInterval <= 0) {
+            return 0;
+        }
+        String key = key(record);
+        long now = record.getMillis();
+        Repeat repeat = repeats.get(key);
+        if (repeat == null) {
+            if (repeats.size() >= MAX_REPEATS) {
+                evict();
+            }
+            repeats.putIfAbsent(key, new Repeat(record, now + repeatInterval));
+            return 0;
+        }
+        if (now < repeat.until) {
+            repeat.suppressed.increment();
+            return -1;
+        }
+        // concurrent updates of the deadline are harmless
+        repeat.until = now + repeatInterval;
+        repeat.record = record;
+        return repeat.suppressed.sumThenReset();
+    }
+
+    /**
+     * Forgets the recent messages, after having reported the records that
+     * have been suppressed.
+     */
+    private void evict() {
+        for (String key : repeats.keySet()) {
+            Repeat repeat = repeats.remove(key);
+            if (repeat != null) {
+                long n = repeat.suppressed.sumThenReset();
+                if (n > 0) {
+                    offer(summary(repeat.record, n));
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifies the message of a record without formatting it (formatting is
+     * left to the background thread).
+     */
+    private static String key(LogRecord record) {
+        StringBuilder result = new StringBuilder()
+                .append(record.getLoggerName()).append('|')
+                .append(record.getLevel().intValue()).append('|')
+                .append(record.getMessage()).append('|')
+                .append(Arrays.hashCode(record.getParameters()));
+        Throwable thrown = record.getThrown();
+        if (thrown != null) {
+            result.append('|').append(thrown.getClass().getName()).append('|').append(thrown.getMessage());
+        }
+        return result.toString();
+    }
+
+    private LogRecord summary(LogRecord record, long suppressed) {
+        String msg = record.getMessage();
+        Throwable thrown = record.getThrown();
+        if ((msg == null || msg.isEmpty()) && thrown != null) {
+            msg = thrown.toString();
+        }
+        // the parameters are formatted with the message by the background thread
+        LogRecord result = new LogRecord(record.getLevel(), "Previous message repeated " + suppressed + " times: " + msg);
+        result.setParameters(record.getParameters());
+        result.setLoggerName(record.getLoggerName());
+        result.setSourceClassName(record.getSourceClassName());
+        result.setSourceMethodName(record.getSourceMethodName());
+        return result;
+    }
+
+    private void write() {
+        try {
+            while (!closed) {
+                LogRecord record = queue.poll(POLL, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    file.publish(record);
+                    if (queue.isEmpty()) {
+                        reportDropped();
+                        file.flush();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            reportError("Log writer stopped", ex, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void drain() {
+        List<LogRecord> records = new ArrayList<>(queue.size());
+        queue.drainTo(records);
+        records.forEach(file::publish);
+        reportDropped();
+        file.flush();
+    }
+
+    private void reportDropped() {
+        long n = dropped.sumThenReset();
+        if (n > 0) {
+            LogRecord record = new LogRecord(Level.WARNING, n + " log records dropped (buffer full)");
+            record.setLoggerName(AsyncFileHandler.class.getName());
+            file.publish(record);
+        }
+    }
+
+    private static final class Repeat {
+
+        final LongAdder suppressed = new LongAdder();
+        volatile LogRecord record;
+        volatile long until;
+
+        Repeat(LogRecord record, long until) {
+            this.record = record;
+            this.until = until;
+        }
+    }
+
+    private static String getProperty(String name, String defaultValue) {
+        String value = LogManager.getLogManager().getProperty(AsyncFileHandler.class.getName() + "." + name);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    private static int getInt(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getProperty(name, Integer.toString(defaultValue)));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    private static long getLong(String name, long defaultValue) {
+        try {
+            return Long.parseLong(getProperty(name, Long.toString(defaultValue)));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+}
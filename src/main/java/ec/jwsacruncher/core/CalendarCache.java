@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.timeseries.calendars.IGregorianCalendarProvider;
+import ec.tstoolkit.timeseries.calendars.TradingDaysType;
+import ec.tstoolkit.timeseries.simplets.TsDomain;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of the calendar regressors (trading days, working days...), keyed by
+ * calendar, type of regressors and time domain (which includes the
+ * frequency). The cache is put in front of the calendars of a processing
+ * context (see {@link #wrap(String, IGregorianCalendarProvider)}), so that the
+ * items that use the same calendar on the same domain share their regressors
+ * instead of generating them again. The cache is thread-safe and bounded by a
+ * maximum number of values. Note that the proxies only implement
+ * IGregorianCalendarProvider: the code that checks the class of the calendars
+ * (national, composite or chained calendars) doesn't recognise them.
+ */
+public final class CalendarCache {
+
+    private static final String CALENDAR_DATA = "calendarData";
+
+    private final Cache<List<Object>, DataBlock[]> cache;
+
+    /**
+     *
+     * @param maxValues Maximum number of values of the cached regressors
+     */
+    public CalendarCache(long maxValues) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxValues)
+                .weigher((List<Object> k, DataBlock[] v) -> v.length == 0 ? 1 : v.length * v[0].getLength())
+                .recordStats()
+                .build();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Creates a proxy of a calendar that serves its regressors from this
+     * cache. The other methods are delegated to the calendar.
+     *
+     * @param name The name of the calendar in its manager
+     * @param calendar
+     * @return
+     */
+    public IGregorianCalendarProvider wrap(String name, IGregorianCalendarProvider calendar) {
+        if (Proxy.isProxyClass(calendar.getClass()) && Proxy.getInvocationHandler(calendar) instanceof Handler) {
+            return calendar;
+        }
+        return (IGregorianCalendarProvider) Proxy.newProxyInstance(IGregorianCalendarProvider.class.getClassLoader(),
+                new Class<?>[]{IGregorianCalendarProvider.class}, new Handler(name, calendar));
+    }
+
+    @lombok.AllArgsConstructor
+    private final class Handler implements InvocationHandler {
+
+        private final String name;
+        private final IGregorianCalendarProvider calendar;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isCalendarData(method, args)) {
+                TradingDaysType type = (TradingDaysType) args[0];
+                TsDomain domain = (TsDomain) args[1];
+                List<DataBlock> buffer = (List<DataBlock>) args[2];
+                int start = args.length > 3 ? (Integer) args[3] : 0;
+                DataBlock[] data;
+                try {
+                    data = cache.get(Arrays.asList(name, type, domain), () -> compute(method, args));
+                } catch (ExecutionException | UncheckedExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    throw cause instanceof InvocationTargetException ? cause.getCause() : cause;
+                }
+                for (int i = 0; i < data.length; ++i) {
+                    buffer.get(start + i).copy(data[i]);
+                }
+                return null;
+            }
+            try {
+                return method.invoke(calendar, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        /**
+         * Generates the regressors in new blocks, with the same method as the
+         * caller.
+         */
+        private DataBlock[] compute(Method method, Object[] args) throws Exception {
+            TradingDaysType type = (TradingDaysType) args[0];
+            TsDomain domain = (TsDomain) args[1];
+            int n = calendar.count(type);
+            List<DataBlock> buffer = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i) {
+                buffer.add(new DataBlock(domain.getLength()));
+            }
+            Object[] nargs = args.clone();
+            nargs[2] = buffer;
+            if (nargs.length > 3) {
+                nargs[3] = 0;
+            }
+            method.invoke(calendar, nargs);
+            return buffer.toArray(new DataBlock[n]);
+        }
+    }
+
+    private static boolean isCalendarData(Method method, Object[] args) {
+        return method.getName().equals(CALENDAR_DATA) && args != null
+                && (args.length == 3 || (args.length == 4 && args[3] instanceof Integer))
+                && args[0] instanceof TradingDaysType && args[1] instanceof TsDomain && args[2] instanceof List;
+    }
+}
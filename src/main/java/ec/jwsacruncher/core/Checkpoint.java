@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.jwsacruncher.batch.ISaBundle;
+import ec.jwsacruncher.batch.ISaBundleJournal;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaProcessing;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Journal of a crunch, stored in a folder: the items of every flushed bundle
+ * and the ids of the multi-processings that have been saved in the
+ * workspace. The items of a bundle are stored with a fingerprint of the
+ * items before their estimation, so that a bundle is only restored if its
+ * items have not changed in the workspace.
+ */
+@lombok.extern.java.Log
+public final class Checkpoint {
+
+    private static final String DONE = "done.txt";
+
+    private final Path folder;
+
+    public Checkpoint(Path folder) {
+        this.folder = folder;
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Removes the whole journal.
+     *
+     * @throws IOException
+     */
+    public void clear() throws IOException {
+        delete(folder);
+    }
+
+    /**
+     * Removes the items of the flushed bundles but keeps the list of the
+     * saved multi-processings.
+     *
+     * @throws IOException
+     */
+    public void clearBundles() throws IOException {
+        if (Files.exists(folder)) {
+            try (Stream<Path> children = Files.list(folder)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    if (!child.getFileName().toString().equals(DONE)) {
+                        delete(child);
+                    }
+                }
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        if (Files.exists(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    public boolean isDone(String processing) throws IOException {
+        Path file = folder.resolve(DONE);
+        return Files.exists(file) && Files.readAllLines(file, StandardCharsets.UTF_8).contains(processing);
+    }
+
+    public void markDone(String processing) throws IOException {
+        Files.createDirectories(folder);
+        Files.write(folder.resolve(DONE), Collections.singletonList(processing), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Creates the journal of the bundles of a multi-processing.
+     *
+     * @param id The id of the multi-processing
+     * @param processing The multi-processing whose items are replaced by the
+     * restored ones
+     * @return
+     */
+    public ISaBundleJournal getJournal(String id, SaProcessing processing) {
+        return new Journal(folder.resolve(toFileName(id)), processing);
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Computes the fingerprint of items.
+     *
+     * @param items
+     * @return The SHA-256 of the serialized items, in hexadecimal
+     * @throws IOException
+     */
+    static String fingerprint(Iterable<SaItem> items) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(SaItemSerializer.toBytes(items));
+            StringBuilder result = new StringBuilder(2 * digest.length);
+            for (byte b : digest) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Journal of the bundles of a multi-processing. A bundle is stored in one
+     * file, written atomically: the fingerprint of its items before the
+     * estimation (first line) followed by the estimated items.
+     */
+    @lombok.RequiredArgsConstructor
+    private static final class Journal implements ISaBundleJournal {
+
+        private final Path folder;
+        private final SaProcessing processing;
+        private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean restore(ISaBundle bundle) {
+            List<SaItem> current = new ArrayList<>(bundle.getItems());
+            String fingerprint;
+            try {
+                // kept for the storage of the bundle once it is estimated
+                fingerprint = fingerprint(current);
+                fingerprints.put(bundle.getName(), fingerprint);
+            } catch (IOException ex) {
+                log.log(Level.WARNING, "While restoring bundle " + bundle.getName(), ex);
+                return false;
+            }
+            Path file = getFile(bundle);
+            if (!Files.exists(file)) {
+                return false;
+            }
+            try {
+                byte[] content = Files.readAllBytes(file);
+                int eol = indexOf(content, (byte) '\n');
+                if (eol < 0 || !fingerprint.equals(new String(content, 0, eol, StandardCharsets.US_ASCII))) {
+                    log.log(Level.WARNING, "Checkpoint of bundle {0} does not match the workspace", bundle.getName());
+                    return false;
+                }
+                List<SaItem> restored = SaItemSerializer.fromBytes(Arrays.copyOfRange(content, eol + 1, content.length));
+                if (restored.size() != current.size()) {
+                    log.log(Level.WARNING, "Checkpoint of bundle {0} does not match the workspace", bundle.getName());
+                    return false;
+                }
+                for (int i = 0; i < current.size(); ++i) {
+                    processing.replace(current.get(i), restored.get(i));
+                }
+                return true;
+            } catch (IOException | RuntimeException ex) {
+                log.log(Level.WARNING, "While restoring bundle " + bundle.getName(), ex);
+                return false;
+            }
+        }
+
+        @Override
+        public void store(ISaBundle bundle) {
+            String fingerprint = fingerprints.remove(bundle.getName());
+            if (fingerprint == null) {
+                // the items before the estimation are unknown
+                return;
+            }
+            Path file = getFile(bundle);
+            try {
+                Files.createDirectories(folder);
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    out.write((fingerprint + "\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(SaItemSerializer.toBytes(bundle.getItems()));
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                log.log(Level.WARNING, "While storing checkpoint of bundle " + bundle.getName(), ex);
+            }
+        }
+
+        private Path getFile(ISaBundle bundle) {
+            return folder.resolve(toFileName(bundle.getName()) + ".xml");
+        }
+
+        private static int indexOf(byte[] content, byte b) {
+            for (int i = 0; i < content.length; ++i) {
+                if (content[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
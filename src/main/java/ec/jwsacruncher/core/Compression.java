@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the output files. Both formats allow the concatenation of
+ * independently compressed blocks, which is used to compress a file in
+ * parallel (see {@link ParallelCompressor}). zstd requires zstd-jni
+ * (com.github.luben:zstd-jni) on the class path; it is loaded by reflection.
+ */
+public enum Compression {
+
+    NONE(""), GZIP(".gz"), ZSTD(".zst");
+
+    private static final String ZSTD_STREAM = "com.github.luben.zstd.ZstdOutputStream";
+
+    private final String extension;
+
+    private Compression(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     *
+     * @param name none, gzip or zstd (null means none)
+     * @return
+     * @throws IllegalArgumentException if the name is unknown or if zstd is
+     * not available
+     */
+    public static Compression parse(String name) throws IllegalArgumentException {
+        if (name == null) {
+            return NONE;
+        }
+        Compression result;
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "none":
+                result = NONE;
+                break;
+            case "gzip":
+            case "gz":
+                result = GZIP;
+                break;
+            case "zstd":
+                result = ZSTD;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown compression '" + name + "'");
+        }
+        if (!result.isAvailable()) {
+            throw new IllegalArgumentException("Compression '" + name + "' requires " + ZSTD_STREAM + " on the class path");
+        }
+        return result;
+    }
+
+    public boolean isAvailable() {
+        return this != ZSTD || getZstdConstructor() != null;
+    }
+
+    /**
+     * Creates a compressed stream.
+     *
+     * @param stream
+     * @return
+     * @throws IOException
+     */
+    public OutputStream wrap(OutputStream stream) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(stream);
+            case ZSTD:
+                try {
+                    return (OutputStream) getZstdConstructor().newInstance(stream);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    throw new IOException(ex);
+                }
+            default:
+                return stream;
+        }
+    }
+
+    private static Constructor<?> getZstdConstructor() {
+        try {
+            return Class.forName(ZSTD_STREAM).getConstructor(OutputStream.class);
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  *
@@ -41,29 +42,57 @@ import java.util.Map;
 public class FileRepository {
 
     public void storeSaProcessing(FileWorkspace ws, WorkspaceItem item, SaProcessing processing) throws IOException {
+        Object event = JfrEvents.begin(JfrEvents.Type.SAVE);
         makeSaProcessingBackup(ws, item);
         ws.store(item, processing);
+        JfrEvents.commit(event, item.getId());
     }
 
     public Map<WorkspaceItem, SaProcessing> loadAllSaProcessing(FileWorkspace ws, ProcessingContext context) throws IOException {
+        return loadAllSaProcessing(ws, context, o -> true);
+    }
+
+    public Map<WorkspaceItem, SaProcessing> loadAllSaProcessing(FileWorkspace ws, ProcessingContext context, Predicate<String> filter) throws IOException {
         Map<WorkspaceItem, SaProcessing> result = new LinkedHashMap<>();
         for (WorkspaceItem item : ws.getItems()) {
             WorkspaceFamily family = item.getFamily();
-            if (family.equals(WorkspaceFamily.SA_MULTI)) {
-                result.put(item, (SaProcessing) ws.load(item));
+            if (family.equals(WorkspaceFamily.SA_MULTI) && filter.test(item.getId())) {
+                result.put(item, (SaProcessing) load(ws, item));
             }
         }
         return result;
     }
 
+    public SaProcessing loadSaProcessing(FileWorkspace ws, String id) throws IOException {
+        for (WorkspaceItem item : ws.getItems()) {
+            if (item.getFamily().equals(WorkspaceFamily.SA_MULTI) && item.getId().equals(id)) {
+                return (SaProcessing) load(ws, item);
+            }
+        }
+        throw new IOException("Multi-processing '" + id + "' not found");
+    }
+
     public Map<WorkspaceItem, GregorianCalendarManager> loadAllCalendars(FileWorkspace ws, ProcessingContext context) throws IOException {
+        return loadAllCalendars(ws, context, null);
+    }
+
+    /**
+     * Loads the calendars of a workspace in a processing context.
+     *
+     * @param ws
+     * @param context
+     * @param cache The cache of the regressors of the calendars (may be null)
+     * @return
+     * @throws IOException
+     */
+    public Map<WorkspaceItem, GregorianCalendarManager> loadAllCalendars(FileWorkspace ws, ProcessingContext context, CalendarCache cache) throws IOException {
         Map<WorkspaceItem, GregorianCalendarManager> result = new LinkedHashMap<>();
         for (WorkspaceItem item : ws.getItems()) {
             WorkspaceFamily family = item.getFamily();
             if (family.equals(WorkspaceFamily.UTIL_CAL)) {
-                GregorianCalendarManager calendar = (GregorianCalendarManager) ws.load(item);
+                GregorianCalendarManager calendar = (GregorianCalendarManager) load(ws, item);
                 result.put(item, calendar);
-                applyCalendars(context, calendar);
+                applyCalendars(context, calendar, cache);
             }
         }
         return result;
@@ -74,7 +103,7 @@ public class FileRepository {
         for (WorkspaceItem item : ws.getItems()) {
             WorkspaceFamily family = item.getFamily();
             if (family.equals(WorkspaceFamily.UTIL_VAR)) {
-                TsVariables vars = (TsVariables) ws.load(item);
+                TsVariables vars = (TsVariables) load(ws, item);
                 result.put(item, vars);
                 applyVariables(context, item.getLabel(), vars);
             }
@@ -82,6 +111,13 @@ public class FileRepository {
         return result;
     }
 
+    private Object load(FileWorkspace ws, WorkspaceItem item) throws IOException {
+        Object event = JfrEvents.begin(JfrEvents.Type.LOAD);
+        Object result = ws.load(item);
+        JfrEvents.commit(event, item.getId(), item.getFamily());
+        return result;
+    }
+
     private void makeSaProcessingBackup(FileWorkspace ws, WorkspaceItem item) throws IOException {
         Path source = ws.getFile(item);
         Path target = source.getParent().resolve(Paths.changeExtension(source.getFileName().toString(), "bak"));
@@ -94,12 +130,12 @@ public class FileRepository {
         manager.resetDirty();
     }
 
-    private void applyCalendars(ProcessingContext context, GregorianCalendarManager source) {
+    private void applyCalendars(ProcessingContext context, GregorianCalendarManager source, CalendarCache cache) {
         GregorianCalendarManager target = context.getGregorianCalendars();
         for (String s : source.getNames()) {
             if (!target.contains(s)) {
                 IGregorianCalendarProvider cal = source.get(s).withCalendarManager(target);
-                target.set(s, cal);
+                target.set(s, cache != null ? cache.wrap(s, cal) : cal);
             }
         }
         target.resetDirty();
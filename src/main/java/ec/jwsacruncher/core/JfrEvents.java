@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import java.io.Closeable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Java Flight Recorder events of the stages of the cruncher. The code is
+ * compiled against the Java 8 API, so the events are defined at runtime with
+ * jdk.jfr.EventFactory (by reflection) when the first recording is started.
+ * When no recording is active (before the first one or after the last one is
+ * closed), {@link #begin(Type)} only reads a volatile field and returns null.
+ * <pre>
+ * Object event = JfrEvents.begin(JfrEvents.Type.QUERY);
+ * ...
+ * JfrEvents.commit(event, name, source);
+ * </pre>
+ */
+@lombok.extern.java.Log
+public final class JfrEvents {
+
+    public enum Type {
+        WORKSPACE("Workspace", "workspace"),
+        LOAD("Workspace Item Load", "item", "family"),
+        QUERY("Series Query", "series", "source"),
+        ESTIMATION("Series Estimation", "series", "method", "outcome"),
+        FLUSH("Output Flush", "bundle", "output", "items"),
+        SAVE("Multi-processing Save", "processing");
+
+        private final String label;
+        private final String[] fields;
+
+        private Type(String label, String... fields) {
+            this.label = label;
+            this.fields = fields;
+        }
+
+        String getName() {
+            return "ec.jwsacruncher." + label.replaceAll("[^A-Za-z]", "");
+        }
+    }
+
+    private static Object[] factories;
+    private static volatile Object[] active;
+    private static int recordings;
+    private static Method NEW_EVENT, BEGIN, SET, COMMIT;
+
+    private JfrEvents() {
+    }
+
+    public static boolean isEnabled() {
+        return active != null;
+    }
+
+    /**
+     * Starts an event.
+     *
+     * @param type
+     * @return The event or null if no recording is active
+     */
+    public static Object begin(Type type) {
+        Object[] f = active;
+        if (f == null) {
+            return null;
+        }
+        try {
+            Object event = NEW_EVENT.invoke(f[type.ordinal()]);
+            BEGIN.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends and commits an event.
+     *
+     * @param event The event returned by begin (may be null)
+     * @param values The values of the fields of the type of the event (the
+     * strings are converted with toString)
+     */
+    public static void commit(Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < values.length; ++i) {
+                Object value = values[i];
+                SET.invoke(event, i, value == null || value instanceof Number ? value : value.toString());
+            }
+            COMMIT.invoke(event);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.log(Level.FINE, "Failed to commit a JFR event", ex);
+        }
+    }
+
+    /**
+     * Starts a recording of the events of the cruncher (and of the default
+     * events of the JVM). The recording is written in the given file when it
+     * is closed. The events are created as long as a recording is open.
+     *
+     * @param file
+     * @return The recording
+     * @throws UnsupportedOperationException if the runtime has no flight
+     * recorder
+     */
+    public static synchronized Closeable start(Path file) {
+        try {
+            if (factories == null) {
+                factories = createFactories();
+            }
+            Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+            Class<?> configurationClass = Class.forName("jdk.jfr.Configuration");
+            Object configuration = configurationClass.getMethod("getConfiguration", String.class).invoke(null, "default");
+            Object recording = recordingClass.getConstructor(configurationClass).newInstance(configuration);
+            for (Type type : Type.values()) {
+                recordingClass.getMethod("enable", String.class).invoke(recording, type.getName());
+            }
+            recordingClass.getMethod("setDestination", Path.class).invoke(recording, file);
+            recordingClass.getMethod("start").invoke(recording);
+            ++recordings;
+            active = factories;
+            AtomicBoolean closed = new AtomicBoolean();
+            return () -> {
+                if (closed.getAndSet(true)) {
+                    return;
+                }
+                stopped();
+                try {
+                    recordingClass.getMethod("stop").invoke(recording);
+                    recordingClass.getMethod("close").invoke(recording);
+                } catch (ReflectiveOperationException ex) {
+                    log.log(Level.WARNING, "Failed to stop the JFR recording", ex);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new UnsupportedOperationException("Java Flight Recorder is not available", ex);
+        }
+    }
+
+    private static synchronized void stopped() {
+        if (--recordings == 0) {
+            active = null;
+        }
+    }
+
+    /**
+     * Defines the events with jdk.jfr.EventFactory.
+     */
+    private static Object[] createFactories() throws ReflectiveOperationException {
+        Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+        Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+        Method create = factoryClass.getMethod("create", List.class, List.class);
+
+        Object[] result = new Object[Type.values().length];
+        for (Type type : Type.values()) {
+            List<Object> annotations = Arrays.asList(
+                    annotation.newInstance(annotationType("jdk.jfr.Name"), type.getName()),
+                    annotation.newInstance(annotationType("jdk.jfr.Label"), type.label),
+                    annotation.newInstance(annotationType("jdk.jfr.Category"), new String[]{"JDemetra+", "Cruncher"}));
+            List<Object> fields = new ArrayList<>();
+            for (String field : type.fields) {
+                Class<?> fieldType = field.equals("items") ? int.class : String.class;
+                fields.add(descriptor.newInstance(fieldType, field, Collections.singletonList(
+                        annotation.newInstance(annotationType("jdk.jfr.Label"), field))));
+            }
+            result[type.ordinal()] = create.invoke(null, annotations, fields);
+        }
+        NEW_EVENT = factoryClass.getMethod("newEvent");
+        BEGIN = eventClass.getMethod("begin");
+        SET = eventClass.getMethod("set", int.class, Object.class);
+        COMMIT = eventClass.getMethod("commit");
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotationType(String name) throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName(name);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses files by blocks: the blocks are compressed concurrently and
+ * written, in order, as a sequence of independent members (gzip) or frames
+ * (zstd), which standard tools read as a single stream.
+ */
+@lombok.experimental.UtilityClass
+public class ParallelCompressor {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int MAX_PENDING = 16;
+
+    /**
+     * Compresses a file and deletes it.
+     *
+     * @param file
+     * @param compression
+     * @param executor
+     * @return The compressed file
+     * @throws IOException
+     */
+    public Path compress(Path file, Compression compression, ExecutorService executor) throws IOException {
+        if (compression == Compression.NONE) {
+            return file;
+        }
+        Path target = file.resolveSibling(file.getFileName() + compression.getExtension());
+        try {
+            write(file, target, compression, executor);
+        } catch (IOException ex) {
+            Files.deleteIfExists(target);
+            throw ex;
+        }
+        Files.delete(file);
+        return target;
+    }
+
+    private void write(Path file, Path target, Compression compression, ExecutorService executor) throws IOException {
+        try (InputStream input = Files.newInputStream(file);
+                OutputStream output = Files.newOutputStream(target)) {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            byte[] block;
+            while ((block = readBlock(input)) != null) {
+                final byte[] data = block;
+                pending.add(executor.submit(() -> compress(data, compression)));
+                if (pending.size() >= MAX_PENDING) {
+                    output.write(get(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                output.write(get(pending.poll()));
+            }
+        }
+    }
+
+    private byte[] readBlock(InputStream input) throws IOException {
+        byte[] result = new byte[BLOCK_SIZE];
+        int n = 0;
+        while (n < BLOCK_SIZE) {
+            int count = input.read(result, n, BLOCK_SIZE - n);
+            if (count < 0) {
+                break;
+            }
+            n += count;
+        }
+        return n == 0 ? null : n == BLOCK_SIZE ? result : Arrays.copyOf(result, n);
+    }
+
+    byte[] compress(byte[] data, Compression compression) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (OutputStream stream = compression.wrap(result)) {
+            stream.write(data);
+        }
+        return result.toByteArray();
+    }
+
+    private byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tstoolkit.information.InformationSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Results that are actually requested by the outputs of a crunch, as defined
+ * by the Matrix (single values) and TSMatrix (series) items of the
+ * configuration. The projection determines the diagnostics that must be
+ * computed and the outputs that must be created; the items are compressed as
+ * soon as they are estimated if nothing is requested.
+ */
+@lombok.Value
+public class ResultProjection {
+
+    private static final String DIAGNOSTICS = "diagnostics";
+
+    /**
+     * Series requested (TSMatrix)
+     */
+    List<String> series;
+    /**
+     * Single values requested (Matrix) or null for the default items of the
+     * matrix output
+     */
+    List<String> items;
+    /**
+     * Names (lower case) of the diagnostics used in the single values
+     */
+    Set<String> diagnostics;
+
+    public static ResultProjection of(String[] matrix, String[] tsmatrix) {
+        List<String> series = tsmatrix != null ? distinct(tsmatrix) : Collections.emptyList();
+        List<String> items = matrix != null ? distinct(matrix) : null;
+        return new ResultProjection(series, items, getDiagnostics(items));
+    }
+
+    public boolean hasSeries() {
+        return !series.isEmpty();
+    }
+
+    public boolean hasItems() {
+        return items == null || !items.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return !hasSeries() && !hasItems();
+    }
+
+    private static List<String> distinct(String[] names) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String name : names) {
+            if (name != null && !name.trim().isEmpty()) {
+                result.add(name.trim());
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(result.toArray(new String[result.size()])));
+    }
+
+    private static Set<String> getDiagnostics(List<String> items) {
+        Set<String> result = new LinkedHashSet<>();
+        if (items != null) {
+            for (String item : items) {
+                if (InformationSet.isPrefix(item, DIAGNOSTICS)) {
+                    int start = DIAGNOSTICS.length() + 1;
+                    int end = item.indexOf(InformationSet.SEP, start);
+                    if (end > 0) {
+                        result.add(item.substring(start, end));
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
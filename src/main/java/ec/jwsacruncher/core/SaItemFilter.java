@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.Ts;
+import ec.tss.TsMoniker;
+import ec.tss.sa.SaItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Selection of the multi-processings and of the series to crunch. Empty
+ * criteria select everything; the series must satisfy all the non-empty
+ * criteria.
+ */
+public final class SaItemFilter {
+
+    public static final SaItemFilter ALL = of(null, null, null, null);
+
+    /**
+     *
+     * @param processings Ids of the multi-processings
+     * @param series Patterns on the names of the series (* and ? wildcards)
+     * @param sources Sources (providers) of the series
+     * @param monikers Ids of the monikers of the series
+     * @return
+     */
+    public static SaItemFilter of(String[] processings, String[] series, String[] sources, String[] monikers) {
+        return new SaItemFilter(toSet(processings),
+                series != null ? Arrays.stream(series).map(SaItemFilter::compileGlob).collect(Collectors.toList()) : Collections.emptyList(),
+                toSet(sources), toSet(monikers));
+    }
+
+    private final Set<String> processings;
+    private final List<Pattern> series;
+    private final Set<String> sources;
+    private final Set<String> monikers;
+
+    private SaItemFilter(Set<String> processings, List<Pattern> series, Set<String> sources, Set<String> monikers) {
+        this.processings = processings;
+        this.series = series;
+        this.sources = sources;
+        this.monikers = monikers;
+    }
+
+    public boolean acceptsProcessing(String id) {
+        return processings.isEmpty() || processings.contains(id);
+    }
+
+    /**
+     *
+     * @return true if only some items of the multi-processings are selected
+     */
+    public boolean isItemFilter() {
+        return !series.isEmpty() || !sources.isEmpty() || !monikers.isEmpty();
+    }
+
+    /**
+     *
+     * @return true if all the items of all the multi-processings are selected
+     */
+    public boolean isAll() {
+        return processings.isEmpty() && !isItemFilter();
+    }
+
+    public boolean accepts(SaItem item) {
+        Ts ts = item.getTs();
+        TsMoniker moniker = ts.getMoniker();
+        return accepts(ts.getName(), moniker.getSource(), moniker.getId());
+    }
+
+    boolean accepts(String name, String source, String id) {
+        if (!series.isEmpty() && (name == null || series.stream().noneMatch(o -> o.matcher(name).matches()))) {
+            return false;
+        }
+        if (!sources.isEmpty() && !sources.contains(source)) {
+            return false;
+        }
+        return monikers.isEmpty() || monikers.contains(id);
+    }
+
+    /**
+     * Selects the matching items.
+     *
+     * @param items
+     * @return The positions of the selected items
+     */
+    public int[] select(Iterable<SaItem> items) {
+        List<Integer> result = new ArrayList<>();
+        int pos = 0;
+        for (SaItem item : items) {
+            if (accepts(item)) {
+                result.add(pos);
+            }
+            ++pos;
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static Set<String> toSet(String[] values) {
+        return values != null ? new HashSet<>(Arrays.asList(values)) : Collections.emptySet();
+    }
+}
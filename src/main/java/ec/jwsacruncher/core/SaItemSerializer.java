@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaProcessing;
+import ec.tss.xml.information.XmlInformationSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+/**
+ * Serializes sa items with the same xml format as the workspace files.
+ */
+@lombok.experimental.UtilityClass
+public class SaItemSerializer {
+
+    public byte[] toBytes(Iterable<SaItem> items) throws IOException {
+        SaProcessing processing = new SaProcessing();
+        items.forEach(processing::add);
+        XmlInformationSet xml = new XmlInformationSet();
+        xml.copy(processing.write(false));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            JAXBContext.newInstance(XmlInformationSet.class).createMarshaller().marshal(xml, result);
+        } catch (JAXBException ex) {
+            throw new IOException("Failed to serialize items", ex);
+        }
+        return result.toByteArray();
+    }
+
+    public List<SaItem> fromBytes(byte[] data) throws IOException {
+        XmlInformationSet xml;
+        try {
+            xml = (XmlInformationSet) JAXBContext.newInstance(XmlInformationSet.class).createUnmarshaller().unmarshal(new ByteArrayInputStream(data));
+        } catch (JAXBException | ClassCastException ex) {
+            throw new IOException("Failed to deserialize items", ex);
+        }
+        SaProcessing processing = new SaProcessing();
+        if (!processing.read(xml.create())) {
+            throw new IOException("Invalid items");
+        }
+        return SaItems.toList(processing);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.satoolkit.ISaSpecification;
+import ec.tss.sa.SaItem;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utilities on sa items.
+ */
+@lombok.experimental.UtilityClass
+public class SaItems {
+
+    /**
+     * Creates a copy of an item with another estimation specification. The
+     * domain specification, the policy, the series, the name, the priority and
+     * the metadata are unchanged; the copy is not processed.
+     *
+     * @param item
+     * @param spec
+     * @return
+     */
+    public SaItem withEstimationSpecification(SaItem item, ISaSpecification spec) {
+        SaItem nitem = new SaItem(item.getDomainSpecification(), item.getEstimationPolicy(), spec, item.getTs());
+        nitem.setName(item.getName());
+        nitem.setPriority(item.getPriority());
+        nitem.setMetaData(item.getMetaData());
+        return nitem;
+    }
+
+    /**
+     * @param items
+     * @return A modifiable list of the items (typically of a
+     * multi-processing)
+     */
+    public List<SaItem> toList(Iterable<SaItem> items) {
+        List<SaItem> result = new ArrayList<>();
+        items.forEach(result::add);
+        return result;
+    }
+}
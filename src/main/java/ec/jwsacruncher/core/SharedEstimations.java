@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.TsMoniker;
+import ec.tstoolkit.MetaData;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaProcessing;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares the estimation of identical items between the multi-processings of
+ * a workspace. Two items are identical when they have the same series
+ * (moniker), name, domain and estimation specifications, policy, priority and
+ * metadata (comments...), so that a multi-processing is always saved with its
+ * own definitions. The first one is kept
+ * and it replaces the next ones in their multi-processing, so that it is only
+ * estimated once (a processed item keeps its results) and it is output and
+ * saved with every multi-processing that owns it.
+ */
+public final class SharedEstimations {
+
+    private final Map<List<Object>, SaItem> items = new HashMap<>();
+    private int count;
+
+    /**
+     * Replaces the items of a multi-processing that are identical to items of
+     * the previous multi-processings. An item is never shared twice in the
+     * same multi-processing, so that it is not estimated concurrently.
+     *
+     * @param processing
+     * @param list The items of the processing that will be estimated; the
+     * shared items are replaced in the list and in the processing
+     * @return The number of shared items
+     */
+    public int share(SaProcessing processing, List<SaItem> list) {
+        Set<SaItem> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<List<Object>, SaItem> added = new HashMap<>();
+        int n = 0;
+        for (int i = 0; i < list.size(); ++i) {
+            SaItem item = list.get(i);
+            List<Object> key = keyOf(item);
+            if (key == null) {
+                continue;
+            }
+            SaItem shared = items.get(key);
+            if (shared != null && shared != item && used.add(shared)) {
+                processing.replace(item, shared);
+                list.set(i, shared);
+                ++n;
+            } else if (shared == null) {
+                added.putIfAbsent(key, item);
+            }
+        }
+        items.putAll(added);
+        count += n;
+        return n;
+    }
+
+    /**
+     * Replaces a shared item by the item that has actually been estimated in
+     * its place (see SaBatchProcessor.getReplacements).
+     *
+     * @param item
+     * @param nitem
+     */
+    public void replace(SaItem item, SaItem nitem) {
+        items.replaceAll((k, v) -> v == item ? nitem : v);
+    }
+
+    /**
+     * Gets the number of estimations that have been avoided.
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public void clear() {
+        items.clear();
+        count = 0;
+    }
+
+    private static List<Object> keyOf(SaItem item) {
+        TsMoniker moniker = item.getTs().getMoniker();
+        if (moniker.getSource() == null || moniker.getId() == null || item.getEstimationSpecification() == null) {
+            return null;
+        }
+        MetaData meta = item.getMetaData();
+        return Arrays.asList(moniker, item.getName(), item.getTs().getName(),
+                item.getDomainSpecification(), item.getEstimationSpecification(), item.getEstimationPolicy(),
+                item.getPriority(), meta != null ? new HashMap<>(meta) : null);
+    }
+}
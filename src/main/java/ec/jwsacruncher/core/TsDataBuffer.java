@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.TsMoniker;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Off-heap storage of the observations of time series. The values are packed
+ * in memory-mapped temporary files (or direct buffers if no folder is given),
+ * so that only a small index stays on the heap. Entries are never released
+ * individually; the whole buffer is released on close.
+ */
+public final class TsDataBuffer implements Closeable {
+
+    private static final int CHUNK_SIZE = 1 << 23; // doubles (64 MB)
+
+    private final Path folder;
+    private final List<DoubleBuffer> chunks = new ArrayList<>();
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final Map<TsMoniker, Entry> index = new HashMap<>();
+
+    /**
+     *
+     * @param folder Folder of the temporary files or null to use direct
+     * buffers (limited by -XX:MaxDirectMemorySize)
+     */
+    public TsDataBuffer(Path folder) {
+        this.folder = folder;
+    }
+
+    public synchronized void put(TsMoniker moniker, TsData data) {
+        double[] values = data.internalStorage();
+        DoubleBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < values.length) {
+            chunk = allocate(Math.max(CHUNK_SIZE, values.length));
+        }
+        index.put(moniker, new Entry(chunks.size() - 1, chunk.position(), data.getStart(), values.length));
+        chunk.put(values);
+    }
+
+    /**
+     * Materialises the data of a series.
+     *
+     * @param moniker
+     * @return A new on-heap copy of the data or null if the series is not in
+     * the buffer
+     */
+    public synchronized TsData get(TsMoniker moniker) {
+        Entry entry = index.get(moniker);
+        if (entry == null) {
+            return null;
+        }
+        DoubleBuffer chunk = chunks.get(entry.getChunk()).duplicate();
+        chunk.position(entry.getOffset());
+        double[] values = new double[entry.getLength()];
+        chunk.get(values);
+        return new TsData(entry.getStart(), values, false);
+    }
+
+    /**
+     * Removes a series from the buffer. Its space is only released when the
+     * buffer is closed.
+     *
+     * @param moniker
+     */
+    public synchronized void remove(TsMoniker moniker) {
+        index.remove(moniker);
+    }
+
+    public synchronized boolean contains(TsMoniker moniker) {
+        return index.containsKey(moniker);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.clear();
+        chunks.clear();
+        IOException error = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        channels.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private DoubleBuffer allocate(int ndoubles) {
+        long nbytes = (long) ndoubles * Double.BYTES;
+        ByteBuffer bytes;
+        if (folder == null) {
+            bytes = ByteBuffer.allocateDirect((int) nbytes);
+        } else {
+            try {
+                Files.createDirectories(folder);
+                Path file = Files.createTempFile(folder, "tsdata", ".bin");
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                channels.add(channel);
+                bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, nbytes);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        DoubleBuffer result = bytes.asDoubleBuffer();
+        chunks.add(result);
+        return result;
+    }
+
+    @lombok.Value
+    private static class Entry {
+
+        int chunk;
+        int offset;
+        TsPeriod start;
+        int length;
+    }
+}
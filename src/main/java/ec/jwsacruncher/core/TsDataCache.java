@@ -0,0 +1,354 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import ec.tss.ITsProvider;
+import ec.tss.TsInformation;
+import ec.tss.TsInformationType;
+import ec.tss.TsMoniker;
+import ec.tss.tsproviders.DataSet;
+import ec.tss.tsproviders.IFileLoader;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Cache of the data of time series, keyed by moniker. The cache is put in
+ * front of the providers (see {@link #wrap(ITsProvider)}), so that a series
+ * used in several multi-processings (or workspaces) is only retrieved once.
+ * The entries are held in memory, up to a maximum number of observations.
+ * The entries evicted from memory can be moved to an off-heap
+ * {@link TsDataBuffer}, and all the entries can optionally be kept in a
+ * {@link TsDataStore} that survives the run. The cache can also record the
+ * series in a {@link TsSnapshot} or serve them exclusively from a snapshot.
+ */
+@lombok.extern.java.Log
+public final class TsDataCache implements Closeable {
+
+    private final Cache<TsMoniker, TsData> memory;
+    private final TsDataBuffer offHeap;
+    private final TsDataStore store;
+    private volatile TsSnapshot snapshot;
+    private volatile TsSnapshot.Writer recorder;
+
+    public TsDataCache(long maxObservations, TsDataStore store) {
+        this(maxObservations, null, store);
+    }
+
+    /**
+     *
+     * @param maxObservations Maximum number of observations kept on the heap
+     * @param offHeap Optional off-heap tier (may be null)
+     * @param store Optional on-disk store (may be null)
+     */
+    public TsDataCache(long maxObservations, TsDataBuffer offHeap, TsDataStore store) {
+        CacheBuilder<TsMoniker, TsData> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxObservations)
+                .weigher((TsMoniker k, TsData v) -> v.getLength());
+        if (offHeap != null) {
+            builder = builder.removalListener(o -> {
+                if (o.getCause() == RemovalCause.SIZE) {
+                    offHeap.put(o.getKey(), o.getValue());
+                }
+            });
+        }
+        this.memory = builder.build();
+        this.offHeap = offHeap;
+        this.store = store;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap != null;
+    }
+
+    public void clear() {
+        memory.invalidateAll();
+    }
+
+    /**
+     * Releases the entries held in memory and the off-heap tier (its mapped
+     * files). The store survives the cache.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        memory.invalidateAll();
+        if (offHeap != null) {
+            offHeap.close();
+        }
+    }
+
+    /**
+     * Removes some series from the memory and off-heap tiers, typically
+     * because their source has changed. The entries of the store are checked
+     * against the modification of their file, and the snapshot is a frozen
+     * copy of the data, so they are not affected.
+     *
+     * @param monikers
+     */
+    public void invalidate(Iterable<TsMoniker> monikers) {
+        memory.invalidateAll(monikers);
+        if (offHeap != null) {
+            monikers.forEach(offHeap::remove);
+        }
+    }
+
+    public TsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Serves all the series from a snapshot, without querying the providers.
+     *
+     * @param snapshot The snapshot or null to use the providers
+     */
+    public void setSnapshot(TsSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public TsSnapshot.Writer getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Records all the retrieved series in a snapshot.
+     *
+     * @param recorder The writer of the snapshot or null
+     */
+    public void setRecorder(TsSnapshot.Writer recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Creates a proxy of a provider that serves the data of the series from
+     * this cache. The data of a series only reaches it through its provider,
+     * so the cache has to be put in front of the providers. The proxy
+     * implements all the public interfaces of the provider (file loaders stay
+     * file loaders) but not its class: the code that looks for a provider by
+     * its class must use {@link #unwrap(ITsProvider)}. A provider that cannot
+     * be proxied is returned as is (without cache).
+     *
+     * @param provider
+     * @return
+     */
+    public ITsProvider wrap(ITsProvider provider) {
+        return wrap(provider, () -> this);
+    }
+
+    /**
+     * Creates a proxy of a provider that serves the data of the series from
+     * the current cache of a supplier, so that the cache can be replaced
+     * without registering the providers again. The provider is queried
+     * directly when there is no current cache.
+     *
+     * @param provider
+     * @param cache The supplier of the current cache (may supply null)
+     * @return
+     * @see #wrap(ITsProvider)
+     */
+    public static ITsProvider wrap(ITsProvider provider, Supplier<TsDataCache> cache) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> c = provider.getClass(); c != null; c = c.getSuperclass()) {
+            collectInterfaces(c, interfaces);
+        }
+        try {
+            return (ITsProvider) Proxy.newProxyInstance(provider.getClass().getClassLoader(),
+                    interfaces.toArray(new Class<?>[interfaces.size()]), new Handler(provider, cache));
+        } catch (IllegalArgumentException | SecurityException ex) {
+            log.log(Level.WARNING, "The series of " + provider.getSource() + " are not cached", ex);
+            return provider;
+        }
+    }
+
+    /**
+     * Retrieves the provider wrapped by a cache.
+     *
+     * @param provider A provider, wrapped or not
+     * @return The wrapped provider or the provider itself
+     */
+    public static ITsProvider unwrap(ITsProvider provider) {
+        if (provider != null && Proxy.isProxyClass(provider.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(provider);
+            if (handler instanceof Handler) {
+                return ((Handler) handler).delegate;
+            }
+        }
+        return provider;
+    }
+
+    private static void collectInterfaces(Class<?> c, Set<Class<?>> result) {
+        for (Class<?> i : c.getInterfaces()) {
+            // a proxy cannot implement the package-private interfaces of several packages
+            if (Modifier.isPublic(i.getModifiers()) && result.add(i)) {
+                collectInterfaces(i, result);
+            }
+        }
+    }
+
+    boolean get(ITsProvider provider, TsInformation info) {
+        if (info.moniker == null || info.moniker.getSource() == null) {
+            return provider.get(info);
+        }
+        TsSnapshot current = snapshot;
+        if (current != null) {
+            TsData data = current.get(info.moniker);
+            if (data == null) {
+                info.invalidDataCause = "Series not found in the snapshot";
+                return false;
+            }
+            if (info.type == TsInformationType.Data || info.type == TsInformationType.All) {
+                info.data = data.clone();
+            }
+            return true;
+        }
+        boolean result = fetch(provider, info);
+        TsSnapshot.Writer writer = recorder;
+        if (result && writer != null && info.data != null) {
+            try {
+                writer.add(info.moniker, info.data);
+            } catch (IOException ex) {
+                log.log(Level.WARNING, "While recording " + info.moniker, ex);
+            }
+        }
+        return result;
+    }
+
+    private boolean fetch(ITsProvider provider, TsInformation info) {
+        if (info.type == TsInformationType.Data) {
+            TsData data = memory.getIfPresent(info.moniker);
+            if (data == null && offHeap != null) {
+                data = offHeap.get(info.moniker);
+            }
+            if (data == null && store != null) {
+                data = store.get(info.moniker, getLastModified(provider, info.moniker));
+                if (data != null) {
+                    memory.put(info.moniker, data);
+                }
+            }
+            if (data != null) {
+                // the series don't share their data
+                info.data = data.clone();
+                return true;
+            }
+        }
+        boolean result = provider.get(info);
+        if (result && info.data != null && (info.type == TsInformationType.Data || info.type == TsInformationType.All)) {
+            TsData data = info.data.clone();
+            memory.put(info.moniker, data);
+            if (store != null) {
+                store.put(info.moniker, data, getLastModified(provider, info.moniker));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the last modification of the file that contains a series.
+     *
+     * @param provider
+     * @param moniker
+     * @return The last modification or -1 if the series doesn't come from a
+     * file
+     */
+    static long getLastModified(ITsProvider provider, TsMoniker moniker) {
+        File file = getFile(provider, moniker);
+        return file != null ? file.lastModified() : -1;
+    }
+
+    /**
+     * Retrieves the file that contains a series.
+     *
+     * @param provider
+     * @param moniker
+     * @return The existing file or null if the series doesn't come from a file
+     */
+    public static File getFile(ITsProvider provider, TsMoniker moniker) {
+        ITsProvider source = unwrap(provider);
+        if (!(source instanceof IFileLoader)) {
+            return null;
+        }
+        IFileLoader loader = (IFileLoader) source;
+        try {
+            DataSet dataSet = loader.toDataSet(moniker);
+            if (dataSet == null) {
+                return null;
+            }
+            File file = loader.decodeBean(dataSet.getDataSource()).getFile();
+            return resolve(file, loader.getPaths());
+        } catch (RuntimeException ex) {
+            log.log(Level.FINE, "Cannot locate the file of " + moniker, ex);
+            return null;
+        }
+    }
+
+    private static File resolve(File file, File[] paths) {
+        if (file == null) {
+            return null;
+        }
+        if (file.isAbsolute()) {
+            return file.exists() ? file : null;
+        }
+        if (paths != null) {
+            for (File path : paths) {
+                File result = new File(path, file.getPath());
+                if (result.exists()) {
+                    return result;
+                }
+            }
+        }
+        return file.exists() ? file : null;
+    }
+
+    @lombok.AllArgsConstructor
+    private static final class Handler implements InvocationHandler {
+
+        private final ITsProvider delegate;
+        private final Supplier<TsDataCache> cache;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            TsDataCache current = cache.get();
+            if (current != null) {
+                if (method.getName().equals("get") && args != null && args.length == 1 && args[0] instanceof TsInformation) {
+                    return current.get(delegate, (TsInformation) args[0]);
+                }
+                if (method.getName().equals("clearCache") && (args == null || args.length == 0)) {
+                    current.clear();
+                }
+            }
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import com.google.common.hash.Hashing;
+import ec.tss.TsMoniker;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+
+/**
+ * On-disk store of the data of time series, keyed by moniker. An entry is
+ * only returned if it is still valid: either it has been read from a source
+ * file that has not been modified since, or it is younger than a maximum age.
+ */
+@lombok.extern.java.Log
+public final class TsDataStore {
+
+    private static final int VERSION = 1;
+
+    private final Path folder;
+    private final long maxAge;
+
+    /**
+     *
+     * @param folder
+     * @param maxAge Maximum age (in milliseconds) of the entries that cannot
+     * be checked against the last modification of their source; such entries
+     * are never used if the age is not positive
+     */
+    public TsDataStore(Path folder, long maxAge) {
+        this.folder = folder;
+        this.maxAge = maxAge;
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Retrieves the data of a series.
+     *
+     * @param moniker
+     * @param lastModified The last modification of the source of the series
+     * or a negative value if it is unknown
+     * @return The data or null if there is no valid entry
+     */
+    public TsData get(TsMoniker moniker, long lastModified) {
+        Path file = getFile(moniker);
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream input = new DataInputStream(stream);
+            if (input.readInt() != VERSION) {
+                return null;
+            }
+            long saved = input.readLong();
+            long source = input.readLong();
+            if (lastModified >= 0 ? source != lastModified : maxAge <= 0 || System.currentTimeMillis() - saved > maxAge) {
+                return null;
+            }
+            TsPeriod start = new TsPeriod(TsFrequency.valueOf(input.readInt()), input.readInt(), input.readInt());
+            double[] values = new double[input.readInt()];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = input.readDouble();
+            }
+            return new TsData(start, values, false);
+        } catch (IOException | RuntimeException ex) {
+            log.log(Level.WARNING, "While reading " + file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the data of a series.
+     *
+     * @param moniker
+     * @param data
+     * @param lastModified The last modification of the source of the series
+     * or a negative value if it is unknown
+     */
+    public void put(TsMoniker moniker, TsData data, long lastModified) {
+        Path file = getFile(moniker);
+        if (file == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeLong(lastModified);
+            TsPeriod start = data.getStart();
+            output.writeInt(start.getFrequency().intValue());
+            output.writeInt(start.getYear());
+            output.writeInt(start.getPosition());
+            output.writeInt(data.getLength());
+            for (double value : data.internalStorage()) {
+                output.writeDouble(value);
+            }
+            output.flush();
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "While writing " + file, ex);
+        }
+    }
+
+    private Path getFile(TsMoniker moniker) {
+        if (moniker.getSource() == null || moniker.getId() == null) {
+            return null;
+        }
+        String name = Hashing.sha256().hashString(moniker.getId(), StandardCharsets.UTF_8).toString();
+        return folder.resolve(moniker.getSource().replaceAll("[^A-Za-z0-9._-]", "_")).resolve(name + ".bin");
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.TsMoniker;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the data of the series used by a workspace, stored in a single
+ * binary file: the observations of the series, followed by an index that
+ * gives the position of every moniker. The file is memory-mapped when it is
+ * read.
+ */
+public final class TsSnapshot implements Closeable {
+
+    private static final byte[] MAGIC = "JWSASNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES;
+
+    /**
+     * Opens a snapshot.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file cannot be read or is not a complete
+     * snapshot
+     */
+    public static TsSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+                throw new IOException("Invalid snapshot: " + file);
+            }
+            buffer.position((int) size - Long.BYTES);
+            buffer.position((int) buffer.getLong());
+            int n = buffer.getInt();
+            Map<TsMoniker, Integer> index = new HashMap<>(n * 2);
+            for (int i = 0; i < n; ++i) {
+                String source = getString(buffer), id = getString(buffer);
+                index.put(new TsMoniker(source, id), (int) buffer.getLong());
+            }
+            return new TsSnapshot(buffer, index);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex) {
+            // truncated or corrupted file
+            throw new IOException("Invalid snapshot: " + file, ex);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Map<TsMoniker, Integer> index;
+
+    private TsSnapshot(ByteBuffer buffer, Map<TsMoniker, Integer> index) {
+        this.buffer = buffer;
+        this.index = index;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     *
+     * @param moniker
+     * @return The data of the series or null if the series is not in the
+     * snapshot
+     */
+    public TsData get(TsMoniker moniker) {
+        Integer pos = index.get(moniker);
+        if (pos == null) {
+            return null;
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position(pos);
+        TsPeriod start = new TsPeriod(TsFrequency.valueOf(data.getInt()), data.getInt(), data.getInt());
+        double[] values = new double[data.getInt()];
+        data.asDoubleBuffer().get(values);
+        return new TsData(start, values, false);
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released by the garbage collector
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the series into a new snapshot. The series are appended to a
+     * temporary file as they come. On close, the index is written and the
+     * file replaces the previous snapshot only if the snapshot has been marked
+     * as complete; otherwise the temporary file is deleted, so that a partial
+     * run never replaces a complete snapshot.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path file;
+        private final Path tmp;
+        private final DataOutputStream output;
+        private final Map<TsMoniker, Long> index = new LinkedHashMap<>();
+        private long position;
+        private boolean complete;
+
+        public Writer(Path file) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+            output.write(MAGIC);
+            output.writeInt(VERSION);
+            position = HEADER_SIZE;
+        }
+
+        /**
+         * Adds a series (the series already in the snapshot are ignored).
+         *
+         * @param moniker
+         * @param data
+         * @throws IOException
+         */
+        public synchronized void add(TsMoniker moniker, TsData data) throws IOException {
+            if (moniker.getSource() == null || moniker.getId() == null || index.containsKey(moniker)) {
+                return;
+            }
+            index.put(moniker, position);
+            TsPeriod start = data.getStart();
+            output.writeInt(start.getFrequency().intValue());
+            output.writeInt(start.getYear());
+            output.writeInt(start.getPosition());
+            output.writeInt(data.getLength());
+            for (double value : data.internalStorage()) {
+                output.writeDouble(value);
+            }
+            position += 4 * Integer.BYTES + (long) data.getLength() * Double.BYTES;
+        }
+
+        public synchronized int size() {
+            return index.size();
+        }
+
+        /**
+         * Marks the snapshot as complete: it will be published on close.
+         */
+        public synchronized void complete() {
+            complete = true;
+        }
+
+        public synchronized boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!complete) {
+                try {
+                    output.close();
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                return;
+            }
+            long footer = position;
+            output.writeInt(index.size());
+            for (Map.Entry<TsMoniker, Long> entry : index.entrySet()) {
+                putString(entry.getKey().getSource());
+                putString(entry.getKey().getId());
+                output.writeLong(entry.getValue());
+            }
+            output.writeLong(footer);
+            output.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.satoolkit.ISaSpecification;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.satoolkit.x13.X13Specification;
+import ec.tss.sa.SaItem;
+import ec.tstoolkit.Parameter;
+import ec.tstoolkit.ParameterType;
+import ec.tstoolkit.algorithm.CompositeResults;
+import ec.tstoolkit.algorithm.ProcessingInformation;
+
+/**
+ * Initialises the estimation of refreshed items with the arima parameters
+ * estimated in the previous run (warm start). The optimiser then starts from
+ * these values instead of its generic starting values. A warm estimation
+ * that fails or doesn't converge is re-estimated from scratch (cold start)
+ * and the best of both fits is kept. Once estimated, a warm item gets back
+ * the original estimation specification, so that the initial values are not
+ * saved in the workspace.
+ */
+@lombok.experimental.UtilityClass
+public class WarmStart {
+
+    private final Parameter[] NONE = new Parameter[0];
+    private final String LIKELIHOOD = "likelihood.adjustedlogvalue";
+
+    /**
+     * Creates a new item with the estimation specification of a refreshed item,
+     * where the free arima parameters are initialised with the values of the
+     * point specification of the previous item.
+     *
+     * @param previous The item before the refresh
+     * @param item The refreshed item
+     * @return The new item or null if the previous estimation can't be used
+     * (different method or arima model, no estimated parameters...)
+     */
+    public SaItem of(SaItem previous, SaItem item) {
+        ISaSpecification pspec = previous.getPointSpecification();
+        ISaSpecification espec = item.getEstimationSpecification();
+        ISaSpecification nspec = null;
+        if (pspec instanceof TramoSeatsSpecification && espec instanceof TramoSeatsSpecification) {
+            nspec = of((TramoSeatsSpecification) pspec, (TramoSeatsSpecification) espec);
+        } else if (pspec instanceof X13Specification && espec instanceof X13Specification) {
+            nspec = of((X13Specification) pspec, (X13Specification) espec);
+        }
+        if (nspec == null) {
+            return null;
+        }
+        return SaItems.withEstimationSpecification(item, nspec);
+    }
+
+    /**
+     * Checks that an estimation has succeeded: there are results, without
+     * error, and their likelihood (if any) is finite.
+     *
+     * @param results
+     * @return
+     */
+    public boolean isConverged(CompositeResults results) {
+        if (results == null || ProcessingInformation.hasErrors(results.getProcessingInformation())) {
+            return false;
+        }
+        Double ll = results.getData(LIKELIHOOD, Double.class);
+        return ll == null || Double.isFinite(ll);
+    }
+
+    /**
+     * Compares the fits of two estimations of the same series.
+     *
+     * @param results
+     * @param other
+     * @return true if the first estimation has succeeded and has a better
+     * likelihood than the second one (or if the second one has failed)
+     */
+    public boolean isBetter(CompositeResults results, CompositeResults other) {
+        if (!isConverged(results)) {
+            return false;
+        }
+        if (!isConverged(other)) {
+            return true;
+        }
+        Double ll = results.getData(LIKELIHOOD, Double.class), oll = other.getData(LIKELIHOOD, Double.class);
+        return ll != null && (oll == null || ll > oll);
+    }
+
+    /**
+     * Restores the original estimation specification of an estimated warm
+     * item. The specification of a warm item is its own copy (see
+     * {@link #of(SaItem, SaItem)}), so it is modified in place and the item
+     * keeps its results.
+     *
+     * @param warm The warm item (or its copy)
+     * @param cold The refreshed item that was warm-started
+     */
+    public void restore(SaItem warm, SaItem cold) {
+        ISaSpecification wspec = warm.getEstimationSpecification(), cspec = cold.getEstimationSpecification();
+        if (wspec instanceof TramoSeatsSpecification && cspec instanceof TramoSeatsSpecification) {
+            ec.tstoolkit.modelling.arima.tramo.ArimaSpec arima = ((TramoSeatsSpecification) wspec).getTramoSpecification().getArima(),
+                    carima = ((TramoSeatsSpecification) cspec).getTramoSpecification().getArima();
+            arima.setPhi(carima.getPhi());
+            arima.setTheta(carima.getTheta());
+            arima.setBPhi(carima.getBPhi());
+            arima.setBTheta(carima.getBTheta());
+        } else if (wspec instanceof X13Specification && cspec instanceof X13Specification) {
+            ec.tstoolkit.modelling.arima.x13.ArimaSpec arima = ((X13Specification) wspec).getRegArimaSpecification().getArima(),
+                    carima = ((X13Specification) cspec).getRegArimaSpecification().getArima();
+            arima.setPhi(carima.getPhi());
+            arima.setTheta(carima.getTheta());
+            arima.setBPhi(carima.getBPhi());
+            arima.setBTheta(carima.getBTheta());
+        }
+    }
+
+    private TramoSeatsSpecification of(TramoSeatsSpecification previous, TramoSeatsSpecification spec) {
+        ec.tstoolkit.modelling.arima.tramo.ArimaSpec parima = previous.getTramoSpecification().getArima();
+        TramoSeatsSpecification nspec = spec.clone();
+        ec.tstoolkit.modelling.arima.tramo.ArimaSpec arima = nspec.getTramoSpecification().getArima();
+        Parameter[] phi = initial(parima.getPhi(), arima.getPhi()), theta = initial(parima.getTheta(), arima.getTheta()),
+                bphi = initial(parima.getBPhi(), arima.getBPhi()), btheta = initial(parima.getBTheta(), arima.getBTheta());
+        if (phi == null || theta == null || bphi == null || btheta == null || !isModified(phi, theta, bphi, btheta)) {
+            return null;
+        }
+        if (phi != arima.getPhi()) {
+            arima.setPhi(phi);
+        }
+        if (theta != arima.getTheta()) {
+            arima.setTheta(theta);
+        }
+        if (bphi != arima.getBPhi()) {
+            arima.setBPhi(bphi);
+        }
+        if (btheta != arima.getBTheta()) {
+            arima.setBTheta(btheta);
+        }
+        return nspec;
+    }
+
+    private X13Specification of(X13Specification previous, X13Specification spec) {
+        ec.tstoolkit.modelling.arima.x13.ArimaSpec parima = previous.getRegArimaSpecification().getArima();
+        X13Specification nspec = spec.clone();
+        ec.tstoolkit.modelling.arima.x13.ArimaSpec arima = nspec.getRegArimaSpecification().getArima();
+        Parameter[] phi = initial(parima.getPhi(), arima.getPhi()), theta = initial(parima.getTheta(), arima.getTheta()),
+                bphi = initial(parima.getBPhi(), arima.getBPhi()), btheta = initial(parima.getBTheta(), arima.getBTheta());
+        if (phi == null || theta == null || bphi == null || btheta == null || !isModified(phi, theta, bphi, btheta)) {
+            return null;
+        }
+        if (phi != arima.getPhi()) {
+            arima.setPhi(phi);
+        }
+        if (theta != arima.getTheta()) {
+            arima.setTheta(theta);
+        }
+        if (bphi != arima.getBPhi()) {
+            arima.setBPhi(bphi);
+        }
+        if (btheta != arima.getBTheta()) {
+            arima.setBTheta(btheta);
+        }
+        return nspec;
+    }
+
+    /**
+     * Computes the parameters of a polynomial: the undefined parameters of
+     * the current specification take the previous estimates as initial values;
+     * the other ones are unchanged.
+     *
+     * @param previous
+     * @param current
+     * @return The new parameters (current for an empty polynomial) or null if
+     * the orders of the polynomials are different
+     */
+    Parameter[] initial(Parameter[] previous, Parameter[] current) {
+        int n = previous == null ? 0 : previous.length, m = current == null ? 0 : current.length;
+        if (n != m) {
+            return null;
+        }
+        if (n == 0) {
+            return current != null ? current : NONE;
+        }
+        Parameter[] result = new Parameter[n];
+        for (int i = 0; i < n; ++i) {
+            Parameter p = previous[i], c = current[i];
+            if ((c == null || c.getType() == ParameterType.Undefined) && p != null
+                    && p.getType() != ParameterType.Undefined && Double.isFinite(p.getValue())) {
+                result[i] = new Parameter(p.getValue(), ParameterType.Initial);
+            } else {
+                result[i] = c;
+            }
+        }
+        return result;
+    }
+
+    private boolean isModified(Parameter[]... parameters) {
+        for (Parameter[] p : parameters) {
+            if (p != null) {
+                for (Parameter o : p) {
+                    if (o != null && o.getType() == ParameterType.Initial) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
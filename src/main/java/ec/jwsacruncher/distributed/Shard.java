@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.distributed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A slice of a multi-processing, identified by the positions of its items.
+ */
+@lombok.Value
+public class Shard {
+
+    /**
+     * Id of the multi-processing in the workspace
+     */
+    @lombok.NonNull
+    String processing;
+
+    /**
+     * Name of the shard, used as bundle name for the outputs. The shards are
+     * named like the bundles of a local crunch: after the multi-processing if
+     * there is only one shard, otherwise after the multi-processing and the
+     * position of the shard (starting at 1).
+     */
+    @lombok.NonNull
+    String name;
+
+    /**
+     * Positions of the items in the multi-processing
+     */
+    @lombok.NonNull
+    int[] items;
+
+    /**
+     * Splits a multi-processing in contiguous shards of (at most) the given
+     * size, which are the bundles of a local crunch with the same bundle
+     * size.
+     *
+     * @param processing Id of the multi-processing
+     * @param count Number of items in the multi-processing
+     * @param size Maximum number of items by shard
+     * @return
+     */
+    public static List<Shard> split(String processing, int count, int size) {
+        int[] positions = new int[count];
+        for (int i = 0; i < count; ++i) {
+            positions[i] = i;
+        }
+        return split(processing, positions, size);
+    }
+
+    /**
+     * Splits a selection of items of a multi-processing in shards of (at
+     * most) the given size.
+     *
+     * @param processing Id of the multi-processing
+     * @param positions Positions of the selected items
+     * @param size Maximum number of items by shard
+     * @return
+     */
+    public static List<Shard> split(String processing, int[] positions, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid shard size: " + size);
+        }
+        List<Shard> result = new ArrayList<>();
+        if (positions.length > 0 && positions.length <= size) {
+            result.add(new Shard(processing, processing, positions.clone()));
+            return result;
+        }
+        for (int start = 0, k = 1; start < positions.length; start += size, ++k) {
+            int[] items = Arrays.copyOfRange(positions, start, Math.min(start + size, positions.length));
+            result.add(new Shard(processing, processing + "_" + k, items));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.distributed;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ec.jwsacruncher.batch.ISaBatchFeedback;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * Coordinator side of a distributed crunch. Shards are pulled from a shared
+ * queue by one connection per worker, so that fast workers take more shards.
+ * The shards of an unreachable worker, or of a worker that stops sending
+ * heartbeats, are given to the remaining ones. The outputs of a shard are
+ * committed by the worker whose result has been merged, on the connection of
+ * that result, so that a worker that is still busy with a reassigned shard
+ * cannot commit its outputs.
+ */
+@lombok.extern.java.Log
+public final class ShardCoordinator {
+
+    @FunctionalInterface
+    public interface ResultHandler {
+
+        /**
+         * Merges the result of a shard. Calls may come from several threads.
+         *
+         * @param shard
+         * @param result The serialized processed items
+         * @throws IOException
+         */
+        void accept(Shard shard, byte[] result) throws IOException;
+    }
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = (int) (6 * ShardWorker.HEARTBEAT);
+
+    private final List<InetSocketAddress> workers;
+    private final String token;
+    private final ISaBatchFeedback feedback;
+    private int readTimeout = READ_TIMEOUT;
+
+    public ShardCoordinator(List<InetSocketAddress> workers, ISaBatchFeedback feedback) {
+        this(workers, null, feedback);
+    }
+
+    /**
+     *
+     * @param workers
+     * @param token The token sent to the workers (may be null)
+     * @param feedback
+     */
+    public ShardCoordinator(List<InetSocketAddress> workers, String token, ISaBatchFeedback feedback) {
+        this.workers = workers;
+        this.token = token;
+        this.feedback = feedback;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the time after which a silent worker is considered as lost. It
+     * should be larger than the interval between the heartbeats of the
+     * workers.
+     *
+     * @param readTimeout The timeout in ms
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sends all the shards to the workers.
+     *
+     * @param shards
+     * @param handler
+     * @return The shards that failed on the worker side or that could not be
+     * merged
+     * @throws IOException if some shards could not be sent to any worker
+     */
+    public List<Shard> run(List<Shard> shards, ResultHandler handler) throws IOException {
+        String session = UUID.randomUUID().toString();
+        Queue<Shard> pending = new ConcurrentLinkedQueue<>(shards);
+        Queue<Shard> failed = new ConcurrentLinkedQueue<>();
+        List<InetSocketAddress> alive = new ArrayList<>(workers);
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).build());
+        try {
+            while (!pending.isEmpty() && !alive.isEmpty()) {
+                List<Future<?>> connections = new ArrayList<>();
+                for (InetSocketAddress worker : alive) {
+                    connections.add(executor.submit(() -> {
+                        drain(worker, session, pending, failed, handler);
+                        return null;
+                    }));
+                }
+                List<InetSocketAddress> lost = new ArrayList<>();
+                for (int i = 0; i < connections.size(); ++i) {
+                    try {
+                        connections.get(i).get();
+                    } catch (ExecutionException ex) {
+                        log.log(Level.WARNING, "Worker " + alive.get(i) + " lost", ex.getCause());
+                        show("Worker " + alive.get(i), "lost: " + ex.getCause().getMessage());
+                        lost.add(alive.get(i));
+                    }
+                }
+                alive.removeAll(lost);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!pending.isEmpty()) {
+            throw new IOException(pending.size() + " shard(s) could not be sent: no worker available");
+        }
+        return new ArrayList<>(failed);
+    }
+
+    private void drain(InetSocketAddress worker, String session, Queue<Shard> pending, Queue<Shard> failed, ResultHandler handler) throws IOException {
+        Shard shard;
+        while ((shard = pending.poll()) != null) {
+            try {
+                send(worker, session, shard, handler);
+            } catch (ShardProtocol.ShardException ex) {
+                show(shard.getName(), "failed on " + worker + ": " + ex.getMessage());
+                failed.add(shard);
+                continue;
+            } catch (MergeException ex) {
+                log.log(Level.SEVERE, "While merging shard " + shard.getName(), ex.getCause());
+                show(shard.getName(), "failed to merge: " + ex.getCause().getMessage());
+                failed.add(shard);
+                continue;
+            } catch (IOException | RuntimeException ex) {
+                // the worker is lost; the shard is given to another one
+                pending.add(shard);
+                throw ex;
+            }
+            show(shard.getName(), "processed on " + worker);
+        }
+    }
+
+    private void send(InetSocketAddress worker, String session, Shard shard, ResultHandler handler) throws IOException, ShardProtocol.ShardException, MergeException {
+        try (Socket socket = new Socket()) {
+            socket.connect(worker, CONNECT_TIMEOUT);
+            socket.setSoTimeout(readTimeout);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ShardProtocol.writeShard(out, token, session, shard);
+            byte[] result = ShardProtocol.readResult(in);
+            try {
+                handler.accept(shard, result);
+            } catch (IOException | RuntimeException ex) {
+                try {
+                    ShardProtocol.writeCommit(out, false);
+                } catch (IOException lost) {
+                    // the outputs are discarded by the worker anyway
+                }
+                throw new MergeException(ex);
+            }
+            try {
+                ShardProtocol.writeCommit(out, true);
+                ShardProtocol.readCommitted(in);
+            } catch (IOException ex) {
+                // the result is merged: the shard can't be given to another worker
+                throw new ShardProtocol.ShardException("Commit not acknowledged (" + ex.getMessage() + ")");
+            }
+        }
+    }
+
+    private void show(String item, String msg) {
+        if (feedback != null) {
+            feedback.showItem(item, msg);
+        }
+    }
+
+    private static final class MergeException extends Exception {
+
+        MergeException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
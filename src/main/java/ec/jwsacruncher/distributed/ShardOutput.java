@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Outputs of one attempt at a shard. They are written in a folder of their
+ * own, inside the output folder, and moved to the output folder when the
+ * attempt is committed, so that two attempts at the same shard never write
+ * the same files.
+ */
+@lombok.extern.java.Log
+public final class ShardOutput {
+
+    static final String ATTEMPTS = ".attempts";
+
+    /**
+     * Creates the folder of a new attempt.
+     *
+     * @param output The output folder
+     * @param shard
+     * @return
+     * @throws IOException
+     */
+    public static ShardOutput create(File output, Shard shard) throws IOException {
+        Path root = output.toPath().resolve(ATTEMPTS);
+        Files.createDirectories(root);
+        return new ShardOutput(output.toPath(), Files.createTempDirectory(root, shard.getName() + "-"));
+    }
+
+    private final Path output;
+    private final Path folder;
+
+    private ShardOutput(Path output, Path folder) {
+        this.output = output;
+        this.folder = folder;
+    }
+
+    /**
+     *
+     * @return The folder in which the outputs of the attempt are written
+     */
+    public File getFolder() {
+        return folder.toFile();
+    }
+
+    /**
+     * Moves the outputs of the attempt to the output folder, replacing the
+     * existing files.
+     *
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        try (Stream<Path> stream = Files.walk(folder)) {
+            for (Path file : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                Path target = output.resolve(folder.relativize(file));
+                Files.createDirectories(target.getParent());
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        delete();
+    }
+
+    /**
+     * Removes the outputs of the attempt.
+     */
+    public void discard() {
+        try {
+            delete();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "While removing " + folder, ex);
+        }
+    }
+
+    /**
+     * Associates the outputs of the attempt to its result.
+     *
+     * @param result The serialized processed items
+     * @return
+     */
+    public ShardWorker.Attempt toAttempt(byte[] result) {
+        return new ShardWorker.Attempt() {
+            @Override
+            public byte[] getResult() {
+                return result;
+            }
+
+            @Override
+            public void commit() throws IOException {
+                ShardOutput.this.commit();
+            }
+
+            @Override
+            public void discard() {
+                ShardOutput.this.discard();
+            }
+        };
+    }
+
+    private void delete() throws IOException {
+        if (Files.exists(folder)) {
+            try (Stream<Path> files = Files.walk(folder)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
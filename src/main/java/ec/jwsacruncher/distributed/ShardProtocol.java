@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Wire format between the coordinator and the workers. A request is a
+ * shard, preceded by the shared token and the session of the coordinator; a
+ * response is a sequence of heartbeats followed by either the serialized
+ * processed items or an error message. Once the items are merged, the
+ * coordinator tells the worker to commit or to discard its outputs, and the
+ * worker acknowledges the commit.
+ */
+@lombok.experimental.UtilityClass
+class ShardProtocol {
+
+    static final int VERSION = 3;
+
+    private static final byte HEARTBEAT = 0, RESULT = 1, ERROR = 2, COMMITTED = 3;
+
+    void writeShard(DataOutputStream out, String token, String session, Shard shard) throws IOException {
+        out.writeInt(VERSION);
+        out.writeUTF(token != null ? token : "");
+        out.writeUTF(session);
+        out.writeUTF(shard.getProcessing());
+        out.writeUTF(shard.getName());
+        int[] items = shard.getItems();
+        out.writeInt(items.length);
+        for (int i = 0; i < items.length; ++i) {
+            out.writeInt(items[i]);
+        }
+        out.flush();
+    }
+
+    Request readShard(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version " + version);
+        }
+        String token = in.readUTF();
+        String session = in.readUTF();
+        String processing = in.readUTF();
+        String name = in.readUTF();
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Invalid shard size " + n);
+        }
+        int[] items = new int[n];
+        for (int i = 0; i < items.length; ++i) {
+            items[i] = in.readInt();
+        }
+        return new Request(token, session, new Shard(processing, name, items));
+    }
+
+    /**
+     * Compares two tokens in constant time.
+     */
+    boolean isValidToken(String expected, String actual) {
+        byte[] e = (expected != null ? expected : "").getBytes(StandardCharsets.UTF_8);
+        byte[] a = (actual != null ? actual : "").getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(e, a);
+    }
+
+    void writeHeartbeat(DataOutputStream out) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.flush();
+    }
+
+    void writeResult(DataOutputStream out, byte[] result) throws IOException {
+        out.writeByte(RESULT);
+        out.writeInt(result.length);
+        out.write(result);
+        out.flush();
+    }
+
+    void writeError(DataOutputStream out, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(message != null ? message : "");
+        out.flush();
+    }
+
+    void writeCommit(DataOutputStream out, boolean commit) throws IOException {
+        out.writeBoolean(commit);
+        out.flush();
+    }
+
+    boolean readCommit(DataInputStream in) throws IOException {
+        return in.readBoolean();
+    }
+
+    void writeCommitted(DataOutputStream out) throws IOException {
+        out.writeByte(COMMITTED);
+        out.flush();
+    }
+
+    /**
+     * Reads the acknowledgment of a commit.
+     *
+     * @param in
+     * @throws IOException
+     * @throws ShardException if the outputs could not be committed
+     */
+    void readCommitted(DataInputStream in) throws IOException, ShardException {
+        byte type = in.readByte();
+        switch (type) {
+            case COMMITTED:
+                return;
+            case ERROR:
+                throw new ShardException(in.readUTF());
+            default:
+                throw new IOException("Unexpected response " + type);
+        }
+    }
+
+    /**
+     * Reads the response of a worker, skipping the heartbeats.
+     *
+     * @param in
+     * @return The serialized processed items
+     * @throws IOException
+     * @throws ShardException
+     */
+    byte[] readResult(DataInputStream in) throws IOException, ShardException {
+        while (true) {
+            byte type = in.readByte();
+            switch (type) {
+                case HEARTBEAT:
+                    break;
+                case RESULT:
+                    int n = in.readInt();
+                    if (n < 0) {
+                        throw new IOException("Invalid result size " + n);
+                    }
+                    byte[] result = new byte[n];
+                    in.readFully(result);
+                    return result;
+                case ERROR:
+                    throw new ShardException(in.readUTF());
+                default:
+                    throw new IOException("Unexpected response " + type);
+            }
+        }
+    }
+
+    @lombok.Value
+    static class Request {
+
+        String token;
+        String session;
+        Shard shard;
+    }
+
+    /**
+     * Error reported by a worker while processing a shard.
+     */
+    static final class ShardException extends Exception {
+
+        ShardException(String message) {
+            super(message);
+        }
+    }
+}
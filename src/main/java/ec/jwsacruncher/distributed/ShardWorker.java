@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.distributed;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Worker side of a distributed crunch. Shards are received on a plain socket
+ * and processed one at a time. While a shard is processed, heartbeats are
+ * sent to the coordinator, so that it can tell a busy worker from a lost one.
+ * The outputs of a shard are only committed when the coordinator asks for it
+ * on the same connection; a worker that the coordinator considered as lost
+ * discards them, so that it cannot overwrite the outputs of the worker that
+ * took its shard over. The requests that don't carry the token of the worker
+ * are rejected.
+ */
+@lombok.extern.java.Log
+public final class ShardWorker implements Closeable {
+
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * Processes a shard.
+         *
+         * @param session The session of the coordinator; the shards of a
+         * session come from the same run of the coordinator
+         * @param shard
+         * @return The attempt, which is committed or discarded depending on
+         * the answer of the coordinator
+         * @throws Exception
+         */
+        Attempt process(String session, Shard shard) throws Exception;
+    }
+
+    /**
+     * Result of the processing of a shard.
+     */
+    @FunctionalInterface
+    public interface Attempt {
+
+        /**
+         *
+         * @return The serialized processed items
+         */
+        byte[] getResult();
+
+        /**
+         * Publishes the outputs of this attempt. Called when the coordinator
+         * has merged the result.
+         *
+         * @throws IOException
+         */
+        default void commit() throws IOException {
+        }
+
+        /**
+         * Drops the outputs of this attempt. Called when the result is
+         * rejected or when the coordinator is gone.
+         */
+        default void discard() {
+        }
+    }
+
+    /**
+     * Interval between two heartbeats; the read timeout of the coordinator
+     * must be larger.
+     */
+    static final long HEARTBEAT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Time given to the coordinator to send a request.
+     */
+    private static final int READ_TIMEOUT = 60000;
+
+    private final ServerSocket server;
+    private final String token;
+    private final Handler handler;
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("heartbeat-%d").build());
+
+    /**
+     * Creates a worker listening on the loopback interface, without token.
+     *
+     * @param port The listening port (0 for any free port)
+     * @param handler
+     * @throws IOException
+     */
+    public ShardWorker(int port, Handler handler) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, null, handler);
+    }
+
+    /**
+     *
+     * @param address The listening address
+     * @param port The listening port (0 for any free port)
+     * @param token The token expected from the coordinator; it is required
+     * if the address is not a loopback address
+     * @param handler
+     * @throws IOException
+     */
+    public ShardWorker(InetAddress address, int port, String token, Handler handler) throws IOException {
+        if (!address.isLoopbackAddress() && (token == null || token.isEmpty())) {
+            throw new IllegalArgumentException("A token is required to listen on " + address);
+        }
+        this.server = new ServerSocket();
+        this.server.bind(new InetSocketAddress(address, port));
+        this.token = token;
+        this.handler = handler;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Serves the shards until this worker is closed.
+     *
+     * @throws IOException
+     */
+    public void serve() throws IOException {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT);
+                handle(socket);
+            } catch (SocketException ex) {
+                if (!server.isClosed()) {
+                    log.log(Level.WARNING, "While serving shard", ex);
+                }
+            } catch (IOException ex) {
+                log.log(Level.WARNING, "While serving shard", ex);
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        ShardProtocol.Request request = ShardProtocol.readShard(in);
+        Shard shard = request.getShard();
+        if (!ShardProtocol.isValidToken(token, request.getToken())) {
+            log.warning("Shard " + shard.getName() + " rejected: invalid token from " + socket.getRemoteSocketAddress());
+            ShardProtocol.writeError(out, "Invalid token");
+            return;
+        }
+        Attempt attempt;
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleWithFixedDelay(() -> {
+            synchronized (out) {
+                try {
+                    ShardProtocol.writeHeartbeat(out);
+                } catch (IOException ex) {
+                    // the coordinator is gone; reported when the result is sent
+                }
+            }
+        }, HEARTBEAT, HEARTBEAT, TimeUnit.MILLISECONDS);
+        try {
+            attempt = handler.process(request.getSession(), shard);
+        } catch (Exception | Error ex) {
+            heartbeat.cancel(false);
+            log.log(Level.SEVERE, "While processing shard " + shard.getName(), ex);
+            synchronized (out) {
+                ShardProtocol.writeError(out, ex.getClass().getSimpleName() + ": " + ex.getMessage());
+            }
+            return;
+        }
+        heartbeat.cancel(false);
+        boolean committed = false;
+        try {
+            synchronized (out) {
+                ShardProtocol.writeResult(out, attempt.getResult());
+            }
+            if (!ShardProtocol.readCommit(in)) {
+                return;
+            }
+            try {
+                attempt.commit();
+            } catch (IOException | RuntimeException ex) {
+                log.log(Level.SEVERE, "While committing shard " + shard.getName(), ex);
+                ShardProtocol.writeError(out, ex.getClass().getSimpleName() + ": " + ex.getMessage());
+                return;
+            }
+            committed = true;
+            ShardProtocol.writeCommitted(out);
+        } finally {
+            if (!committed) {
+                attempt.discard();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        heartbeats.shutdownNow();
+        server.close();
+    }
+}
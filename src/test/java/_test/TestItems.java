@@ -0,0 +1,70 @@
+package _test;
+
+import ec.satoolkit.ISaSpecification;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.TsFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaProcessing;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+
+/**
+ * Synthetic monthly series starting in January 2000 (trend, seasonality and
+ * a deterministic noise) and the sa items built on them.
+ */
+@lombok.experimental.UtilityClass
+public class TestItems {
+
+    public double[] values(int n) {
+        return values(n, 0);
+    }
+
+    /**
+     *
+     * @param n Number of observations
+     * @param seed Changes the noise, so that the series differ
+     * @return
+     */
+    public double[] values(int n, int seed) {
+        double[] values = new double[n];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = 100 + i + 10 * Math.sin(i * Math.PI / 6) + (i * 7919 % (13 + seed)) / 13.0;
+        }
+        return values;
+    }
+
+    public TsData data(double[] values) {
+        return new TsData(new TsPeriod(TsFrequency.Monthly, 2000, 0), values, false);
+    }
+
+    public TsData data(int n) {
+        return data(values(n));
+    }
+
+    /**
+     * Creates an item on 10 years of data, estimated with RSA0.
+     *
+     * @param name
+     * @return
+     */
+    public SaItem item(String name) {
+        return item(name, TramoSeatsSpecification.RSA0);
+    }
+
+    public SaItem item(String name, ISaSpecification spec) {
+        return item(name, spec, data(120));
+    }
+
+    public SaItem item(String name, ISaSpecification spec, TsData data) {
+        return new SaItem(spec, TsFactory.instance.createTs(name, null, data));
+    }
+
+    public SaProcessing processing(SaItem... items) {
+        SaProcessing result = new SaProcessing();
+        for (SaItem item : items) {
+            result.add(item);
+        }
+        return result;
+    }
+}
@@ -16,12 +16,34 @@
  */
 package ec.jwsacruncher;
 
+import _test.TestItems;
+import ec.jwsacruncher.batch.SaBatchReport;
+import ec.jwsacruncher.batch.SaExecutors;
+import ec.jwsacruncher.core.SharedEstimations;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.TsFactory;
+import ec.tss.TsMoniker;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import ec.tss.sa.SaProcessing;
+import ec.tstoolkit.algorithm.CompositeResults;
 import nbbrd.io.xml.bind.Jaxb;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -29,6 +51,11 @@ import static org.assertj.core.api.Assertions.assertThat;
  * Unit test for simple App.
  */
 public class AppTest {
+
+    @BeforeAll
+    public static void loadFactories() {
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+    }
     
     @Test
     public void testGenerateDefaultConfigFile(@TempDir Path temp) throws IOException {
@@ -38,6 +65,77 @@ public class AppTest {
                 .hasContent(writeConfigToString(WsaConfig.generateDefault()));
     }
 
+    @Test
+    public void testSharedEstimations(@TempDir Path temp) throws IOException {
+        WsaConfig config = new WsaConfig();
+        config.policy = null;
+        config.deduplicate = true;
+        SharedEstimations shared = new SharedEstimations();
+        SaBatchReport report = new SaBatchReport();
+        SaProcessing first = processing("a", "b"), second = processing("a", "b");
+        try (SaExecutors executors = SaExecutors.of(2, Thread.NORM_PRIORITY, 0, false)) {
+            App.crunch(first, null, "mp1", config, temp.toFile(), Collections.emptyList(), executors, report, null, shared, null);
+            CompositeResults a = first.get(0).process(), b = first.get(1).process();
+            assertThat(a).isNotNull();
+            assertThat(b).isNotNull();
+
+            App.crunch(second, null, "mp2", config, temp.toFile(), Collections.emptyList(), executors, report, null, shared, null);
+            // the items of the first multi-processing are reused with their results
+            assertThat(shared.getCount()).isEqualTo(2);
+            assertThat(second).containsExactlyElementsOf(first);
+            assertThat(second.get(0).process()).isSameAs(a);
+            assertThat(second.get(1).process()).isSameAs(b);
+
+            // the definition of an item is never replaced by another one
+            SaProcessing third = processing("a");
+            third.get(0).setPriority(first.get(0).getPriority() + 1);
+            App.crunch(third, null, "mp3", config, temp.toFile(), Collections.emptyList(), executors, report, null, shared, null);
+            assertThat(shared.getCount()).isEqualTo(2);
+            assertThat(third.get(0)).isNotSameAs(first.get(0));
+            assertThat(third.get(0).getPriority()).isEqualTo(first.get(0).getPriority() + 1);
+        }
+        assertThat(report.getFailureRate()).isZero();
+    }
+
+    @Test
+    public void testCompression(@TempDir Path temp) throws IOException {
+        WsaConfig config = new WsaConfig();
+        config.policy = null;
+        config.BundleSize = 2;
+        config.Matrix = new String[]{"likelihood.ll"};
+        config.TSMatrix = new String[]{"sa"};
+        config.SeriesCompression = "gzip";
+        config.MatrixCompression = "gzip";
+        File output = temp.toFile();
+        try (SaExecutors executors = SaExecutors.of(2, Thread.NORM_PRIORITY, 0, false)) {
+            App.crunch(processing("a", "b", "c"), null, "mp", config, output, App.applyOutputConfig(config, output), executors, null, null, null, null);
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(temp)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        // the files are written and compressed in the folders of the bundles
+        assertThat(files).noneMatch(o -> o.toString().endsWith(".csv"));
+        assertThat(files).allMatch(o -> o.toString().endsWith(".csv.gz") && !o.getParent().equals(temp));
+        assertThat(files).anyMatch(o -> o.getFileName().toString().startsWith("demetra_m"));
+        assertThat(files.stream().map(Path::getParent).distinct()).hasSize(2);
+        for (Path file : files) {
+            try (InputStream stream = new GZIPInputStream(Files.newInputStream(file))) {
+                assertThat(stream.read()).isNotEqualTo(-1);
+            }
+        }
+    }
+
+    private static SaProcessing processing(String... names) {
+        SaProcessing result = new SaProcessing();
+        for (String name : names) {
+            // the shared estimations are found by moniker
+            result.add(new SaItem(TramoSeatsSpecification.RSA0, TsFactory.instance.createTs(name, new TsMoniker("test", name), null, TestItems.data(120))));
+        }
+        return result;
+    }
+
     private static String writeConfigToString(WsaConfig config) throws IOException {
         return Jaxb.Formatter.of(WsaConfig.class).withFormatted(true).formatToString(config);
     }
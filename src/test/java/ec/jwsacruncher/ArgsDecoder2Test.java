@@ -27,6 +27,7 @@ import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static ec.jwsacruncher.ArgsDecoder2.decode;
@@ -53,6 +54,38 @@ public class ArgsDecoder2Test {
                 .isEqualTo(Args.of(ws.toFile(), new WsaConfig()));
     }
 
+    @Test
+    public void testDecodeWorkspaces(@TempDir Path temp) throws IOException {
+        Path ws1 = temp.resolve("ws1.xml");
+        Path ws2 = temp.resolve("ws2.xml");
+        Path other = temp.resolve("other.txt");
+
+        assertThat(decode(ws1.toString(), ws2.toString()))
+                .as("Several workspaces")
+                .usingRecursiveComparison()
+                .isEqualTo(Args.of(Arrays.asList(ws1.toFile(), ws2.toFile()), new WsaConfig()));
+
+        assertThatThrownBy(() -> decode(temp.resolve("*.xml").toString()))
+                .as("No workspace matching pattern")
+                .isInstanceOf(CommandLine.ExecutionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+
+        writeString(ws1, "");
+        writeString(ws2, "");
+        writeString(other, "");
+        assertThat(decode(temp.resolve("*.xml").toString()))
+                .as("Workspaces matching pattern")
+                .usingRecursiveComparison()
+                .isEqualTo(Args.of(Arrays.asList(ws1.toFile(), ws2.toFile()), new WsaConfig()));
+
+        Path manifest = temp.resolve("manifest.txt");
+        Files.write(manifest, Arrays.asList("# nightly run", ws2.toString(), ws1.toString()), StandardCharsets.UTF_8);
+        assertThat(decode("@" + manifest))
+                .as("Workspaces from manifest")
+                .usingRecursiveComparison()
+                .isEqualTo(Args.of(Arrays.asList(ws2.toFile(), ws1.toFile()), new WsaConfig()));
+    }
+
     @Test
     public void testDecodeConfig(@TempDir Path temp) throws IOException {
         Path ws = temp.resolve("workspace.xml");
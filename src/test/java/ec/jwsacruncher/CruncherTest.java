@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import _test.TestItems;
+import ec.demetra.workspace.WorkspaceFamily;
+import ec.demetra.workspace.WorkspaceItem;
+import ec.demetra.workspace.file.FileFormat;
+import ec.demetra.workspace.file.FileWorkspace;
+import ec.jwsacruncher.batch.SaBatchReport;
+import ec.tss.sa.SaProcessing;
+import ec.tss.sa.output.BasicConfiguration;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+public class CruncherTest {
+
+    @Test
+    public void testListener(@TempDir Path temp) throws IOException {
+        Path file = workspace(temp, processing("a", "b", "c"));
+        List<String> processed = new CopyOnWriteArrayList<>();
+        Cruncher.builder()
+                .workspace(file)
+                .config(config(temp))
+                .listener((processing, item, results) -> processed.add(processing + "/" + item.getTs().getRawName() + (results != null ? "" : " failed")))
+                .build()
+                .run();
+        assertThat(processed).containsExactlyInAnyOrder("SAProcessing-1/a", "SAProcessing-1/b", "SAProcessing-1/c");
+    }
+
+    @Test
+    public void testCancel(@TempDir Path temp) throws IOException {
+        Path file = workspace(temp, processing("a", "b"), processing("c", "d"));
+        List<String> processed = new CopyOnWriteArrayList<>();
+        Cruncher[] cruncher = new Cruncher[1];
+        cruncher[0] = Cruncher.builder()
+                .workspace(file)
+                .config(config(temp))
+                .listener((processing, item, results) -> {
+                    processed.add(processing);
+                    cruncher[0].cancel();
+                })
+                .build();
+        cruncher[0].run();
+        assertThat(cruncher[0].isCancelled()).isTrue();
+        // the second multi-processing is not started
+        assertThat(processed).isNotEmpty().containsOnly("SAProcessing-1");
+    }
+
+    @Test
+    public void testRuns(@TempDir Path temp) throws IOException {
+        Path file = workspace(temp, processing("a"));
+        int ndecs = BasicConfiguration.getDecimalNumber();
+        char csvsep = BasicConfiguration.getCsvSeparator();
+
+        WsaConfig first = config(temp);
+        first.ndecs = ndecs + 1;
+        first.csvsep = csvsep == ';' ? "," : ";";
+        SaBatchReport report = Cruncher.builder().workspace(file).config(first).build().run();
+        assertThat(report).isNotNull();
+        // the format of the numbers is restored
+        assertThat(BasicConfiguration.getDecimalNumber()).isEqualTo(ndecs);
+        assertThat(BasicConfiguration.getCsvSeparator()).isEqualTo(csvsep);
+
+        // the cache of the second run is created with its own configuration
+        WsaConfig second = config(temp);
+        second.fromSnapshot = true;
+        assertThatIOException()
+                .isThrownBy(() -> Cruncher.builder().workspace(file).config(second).build().run())
+                .withMessageContaining("Snapshot not found");
+
+        assertThat(Cruncher.builder().workspace(file).config(config(temp)).build().run()).isNotNull();
+    }
+
+    private static WsaConfig config(Path temp) {
+        WsaConfig result = new WsaConfig();
+        result.policy = null;
+        result.refresh = false;
+        result.Threads = 1;
+        result.Output = temp.resolve("output").toString();
+        return result;
+    }
+
+    private static Path workspace(Path temp, SaProcessing... processings) throws IOException {
+        Path result = temp.resolve("ws.xml");
+        try (FileWorkspace ws = FileWorkspace.create(result, FileFormat.GENERIC)) {
+            for (int i = 0; i < processings.length; ++i) {
+                WorkspaceItem item = WorkspaceItem.builder()
+                        .family(WorkspaceFamily.SA_MULTI)
+                        .id("SAProcessing-" + (i + 1))
+                        .label("mp" + (i + 1))
+                        .build();
+                ws.store(item, processings[i]);
+            }
+        }
+        return result;
+    }
+
+    private static SaProcessing processing(String... names) {
+        SaProcessing result = new SaProcessing();
+        for (String name : names) {
+            result.add(TestItems.item(name));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import _test.TestItems;
+import ec.jwsacruncher.batch.SaExecutors;
+import ec.tss.sa.ISaOutputFactory;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaManager;
+import ec.tss.sa.SaProcessing;
+import ec.tstoolkit.algorithm.CompositeResults;
+import ec.tstoolkit.algorithm.IOutput;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+public class WatchModeTest {
+
+    @BeforeAll
+    public static void loadFactories() {
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+    }
+
+    @Test
+    public void testRecrunch(@TempDir Path temp) throws IOException {
+        WsaConfig config = new WsaConfig();
+        config.policy = null;
+        config.watch = true;
+        SaProcessing processing = new SaProcessing();
+        processing.add(TestItems.item("a"));
+        processing.add(TestItems.item("b"));
+        AtomicInteger documents = new AtomicInteger();
+        try (SaExecutors executors = SaExecutors.of(2, Thread.NORM_PRIORITY, 0, false)) {
+            App.crunch(processing, null, "mp", config, temp.toFile(), Collections.emptyList(), executors, null, null, null, null);
+            // the results are kept after the flush
+            CompositeResults b = processing.get(1).process();
+            assertThat(b).isNotNull();
+
+            WatchMode.recrunch(processing, Collections.singletonList(processing.get(0)), "mp", config, Collections.singletonList(counter(documents)), executors);
+            assertThat(processing.get(0).getStatus().isProcessed()).isTrue();
+            // the other series are output without being estimated again
+            assertThat(processing.get(1).process()).isSameAs(b);
+            assertThat(documents).hasValue(2);
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        WsaConfig config = new WsaConfig();
+        config.watch = true;
+        config.fromSnapshot = true;
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> WatchMode.process(Collections.singletonList(new File("ws.xml")), config));
+    }
+
+    private static ISaOutputFactory counter(AtomicInteger documents) {
+        ClassLoader loader = WatchModeTest.class.getClassLoader();
+        IOutput<?> output = (IOutput<?>) Proxy.newProxyInstance(loader, new Class<?>[]{IOutput.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "process":
+                    documents.incrementAndGet();
+                    return null;
+                case "getName":
+                    return "counter";
+                default:
+                    return method.getReturnType() == boolean.class ? true : null;
+            }
+        });
+        return (ISaOutputFactory) Proxy.newProxyInstance(loader, new Class<?>[]{ISaOutputFactory.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "create":
+                    return output;
+                case "getName":
+                    return "counter";
+                default:
+                    return method.getReturnType() == boolean.class ? true : null;
+            }
+        });
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WorkspaceBatchTest {
+
+    @Test
+    public void testGetOutputNames() {
+        File a = new File("a/ws.xml"), b = new File("b/ws.xml"), c = new File("b/WS.xml"), d = new File("c/other.xml");
+        Map<File, String> names = WorkspaceBatch.getOutputNames(Arrays.asList(a, b, c, d));
+        assertThat(names).containsEntry(a, "a_ws").containsEntry(b, "b_ws").containsEntry(c, "b_WS_2").containsEntry(d, "other");
+        assertThat(names.values()).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testGetBaseName() {
+        assertThat(WorkspaceBatch.getBaseName(new File("x/ws.v2.xml"))).isEqualTo("ws.v2");
+        assertThat(WorkspaceBatch.getBaseName(new File("ws"))).isEqualTo("ws");
+    }
+}
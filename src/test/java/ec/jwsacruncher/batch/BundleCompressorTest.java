@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import ec.jwsacruncher.core.Compression;
+import ec.tss.sa.output.BasicConfiguration;
+import ec.tstoolkit.utilities.LinearId;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleCompressorTest {
+
+    @Test
+    public void testFlushed(@TempDir Path temp) throws IOException {
+        Path b1 = folder(temp, "mp_1"), b2 = folder(temp, "mp_2");
+        for (Path folder : new Path[]{b1, b2}) {
+            Files.write(folder.resolve("series_sa.csv"), "a;b\n1;2\n".getBytes());
+            Files.write(folder.resolve("demetra_m.csv"), "a;b\n1;2\n".getBytes());
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (BundleCompressor compressor = new BundleCompressor(temp.toFile(), Compression.GZIP, Compression.NONE, "demetra_m", executor)) {
+            compressor.flushed("mp_1", 0, 10);
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(b1.resolve("series_sa.csv.gz")).exists();
+        assertThat(b1.resolve("series_sa.csv")).doesNotExist();
+        assertThat(b1.resolve("demetra_m.csv")).exists();
+        // the other bundles are not touched
+        assertThat(b2.resolve("series_sa.csv")).exists();
+        assertThat(b2.resolve("series_sa.csv.gz")).doesNotExist();
+    }
+
+    private static Path folder(Path temp, String bundle) throws IOException {
+        return Files.createDirectories(BasicConfiguration.folderFromContext(temp.toFile(), new LinearId(bundle)).toPath());
+    }
+}
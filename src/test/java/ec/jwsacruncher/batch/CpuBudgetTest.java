@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CpuBudgetTest {
+
+    @Test
+    public void testParseCpuMax() {
+        assertThat(CpuBudget.parseCpuMax("max 100000")).isEqualTo(-1);
+        assertThat(CpuBudget.parseCpuMax("-1 100000")).isEqualTo(-1);
+        assertThat(CpuBudget.parseCpuMax("250000 100000")).isEqualTo(2.5);
+        assertThat(CpuBudget.parseCpuMax("xxx")).isEqualTo(-1);
+    }
+
+    @Test
+    public void testParseCpuList() {
+        assertThat(CpuBudget.parseCpuList("0-3,8,10-11")).isEqualTo(7);
+        assertThat(CpuBudget.parseCpuList(" 5\t")).isEqualTo(1);
+        assertThat(CpuBudget.parseCpuList("a-b")).isEqualTo(-1);
+    }
+
+    @Test
+    public void testGetThreads() {
+        int ncpus = CpuBudget.getAvailableCpus();
+        assertThat(ncpus).isPositive().isLessThanOrEqualTo(Runtime.getRuntime().availableProcessors());
+        assertThat(CpuBudget.getThreads(3, 0.5)).isEqualTo(3);
+        assertThat(CpuBudget.getThreads(null, null)).isEqualTo(ncpus);
+        assertThat(CpuBudget.getThreads(null, 0.01)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class CrunchMonitorTest {
+
+    @Test
+    public void testCounters() {
+        AtomicLong clock = new AtomicLong();
+        CrunchMonitor monitor = new CrunchMonitor(clock::get);
+        monitor.startProcessing("sa1", 3, null);
+        monitor.startBundle("b1");
+        assertThat(monitor.getCurrentProcessing()).isEqualTo("sa1");
+        assertThat(monitor.getCurrentBundle()).isEqualTo("b1");
+        assertThat(monitor.getItemsPending()).isEqualTo(3);
+
+        Object s1 = monitor.started("s1");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        Object s2 = monitor.started("s2");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(monitor.getInFlight()).isEqualTo(2);
+        assertThat(monitor.getSlowestInFlight()).isEqualTo("s1 (3s)");
+
+        monitor.finished(s1, true);
+        monitor.finished(s2, false);
+        assertThat(monitor.getInFlight()).isZero();
+        assertThat(monitor.getSlowestInFlight()).isNull();
+        assertThat(monitor.getItemsDone()).isEqualTo(1);
+        assertThat(monitor.getItemsFailed()).isEqualTo(1);
+        assertThat(monitor.getItemsPending()).isEqualTo(1);
+
+        monitor.addPending(-1);
+        assertThat(monitor.getItemsPending()).isZero();
+        assertThat(monitor.getEstimationQueueDepth()).isZero();
+    }
+
+    @Test
+    public void testRates() {
+        AtomicLong clock = new AtomicLong();
+        CrunchMonitor monitor = new CrunchMonitor(clock::get);
+        assertThat(monitor.getOneMinuteRate()).isZero();
+        for (int i = 0; i < 50; ++i) {
+            monitor.finished(monitor.started("s"), true);
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertThat(monitor.getOneMinuteRate()).isCloseTo(10, within(1e-9));
+        assertThat(monitor.getFiveMinuteRate()).isCloseTo(10, within(1e-9));
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(monitor.getOneMinuteRate()).isLessThan(monitor.getFiveMinuteRate()).isPositive();
+    }
+
+    @Test
+    public void testSteadyRate() {
+        AtomicLong clock = new AtomicLong();
+        CrunchMonitor monitor = new CrunchMonitor(clock::get);
+        // 2 items per second during one minute, without any reader
+        for (int i = 0; i < 120; ++i) {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+            monitor.finished(monitor.started("s"), true);
+        }
+        assertThat(monitor.getOneMinuteRate()).isCloseTo(2, within(0.25));
+        assertThat(monitor.getFiveMinuteRate()).isCloseTo(2, within(0.25));
+    }
+
+    @Test
+    public void testReset() {
+        AtomicLong clock = new AtomicLong();
+        CrunchMonitor monitor = new CrunchMonitor(clock::get);
+        monitor.startProcessing("sa1", 3, null);
+        monitor.finished(monitor.started("s1"), true);
+        monitor.started("s2");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertThat(monitor.getOneMinuteRate()).isPositive();
+        monitor.cancel();
+
+        monitor.reset();
+        assertThat(monitor.getCurrentProcessing()).isNull();
+        assertThat(monitor.getItemsDone()).isZero();
+        assertThat(monitor.getItemsPending()).isZero();
+        assertThat(monitor.getInFlight()).isZero();
+        assertThat(monitor.getOneMinuteRate()).isZero();
+        assertThat(monitor.isCancelled()).isFalse();
+    }
+
+    @Test
+    public void testCancel() {
+        CrunchMonitor monitor = new CrunchMonitor(System::nanoTime);
+        assertThat(monitor.isCancelled()).isFalse();
+        monitor.cancel();
+        assertThat(monitor.isCancelled()).isTrue();
+    }
+}
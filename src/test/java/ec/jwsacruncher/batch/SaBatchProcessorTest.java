@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import _test.TestItems;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SaBatchProcessorTest {
+
+    @BeforeAll
+    public static void loadFactories() {
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+    }
+
+    @Test
+    public void testCopies() {
+        SaItem a = TestItems.item("a"), b = TestItems.item("b");
+        SaBundle bundle = new SaBundle("mp", new ArrayList<>(Arrays.asList(a, b)), Collections.emptyList());
+        SaBatchProcessor processor = processor(bundle, new SaBatchReport(), null);
+        processor.setTimeout(1, TimeUnit.MINUTES);
+        assertThat(processor.process()).isTrue();
+
+        // the items of the processing are not modified by the estimation
+        assertThat(a.getStatus().isProcessed()).isFalse();
+        assertThat(b.getStatus().isProcessed()).isFalse();
+        assertThat(bundle.getItems()).hasSize(2).doesNotContain(a, b).allMatch(o -> o.getStatus().isProcessed());
+        assertThat(processor.getReplacements()).containsOnlyKeys(a, b);
+        assertThat(processor.getReplacements().values()).containsExactlyInAnyOrderElementsOf(bundle.getItems());
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        SaItem a = TestItems.item("a");
+        SaBundle bundle = new SaBundle("mp", new ArrayList<>(Collections.singletonList(a)), Collections.emptyList());
+        SaBatchReport report = new SaBatchReport();
+        ExecutorService executor = SaBatchProcessor.newExecutorService(2, Thread.NORM_PRIORITY);
+        Thread main = Thread.currentThread();
+        AtomicBoolean first = new AtomicBoolean(true);
+        // the first estimation doesn't react to the interruption
+        SaBatchProcessor processor = processor(bundle, report, executor, () -> {
+            if (Thread.currentThread() != main && first.getAndSet(false)) {
+                sleepUninterruptibly(1000);
+            }
+            return false;
+        });
+        processor.setTimeout(100, TimeUnit.MILLISECONDS);
+        processor.setFallback(o -> new SaItem(TramoSeatsSpecification.RSA0, o.getTs()));
+        assertThat(processor.process()).isTrue();
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+        // the lost estimation has only modified a copy
+        assertThat(a.getStatus().isProcessed()).isFalse();
+        assertThat(bundle.getItems()).hasSize(1).doesNotContain(a).allMatch(o -> o.getStatus().isProcessed());
+        assertThat(processor.getReplacements()).isEmpty();
+        assertThat(report.getOutcomes()).extracting(SaItemOutcome::getStatus)
+                .containsExactly(SaItemOutcome.Status.TIMEOUT, SaItemOutcome.Status.FALLBACK);
+    }
+
+    @Test
+    public void testError() {
+        for (long timeout : new long[]{0, 60}) {
+            SaBundle bundle = new SaBundle("mp", new ArrayList<>(Collections.singletonList(TestItems.item("a"))), Collections.emptyList());
+            SaBatchReport report = new SaBatchReport();
+            Thread main = Thread.currentThread();
+            SaBatchProcessor processor = processor(bundle, report, null, () -> {
+                if (Thread.currentThread() != main) {
+                    throw new StackOverflowError();
+                }
+                return false;
+            });
+            processor.setTimeout(timeout, TimeUnit.SECONDS);
+            processor.process();
+
+            assertThat(report.getOutcomes()).hasSize(1).allSatisfy(o -> {
+                assertThat(o.getStatus()).isEqualTo(SaItemOutcome.Status.FAILED);
+                assertThat(o.getException()).isEqualTo(StackOverflowError.class.getName());
+            });
+        }
+    }
+
+    private static SaBatchProcessor processor(SaBundle bundle, SaBatchReport report, ExecutorService executor) {
+        return processor(bundle, report, executor, null);
+    }
+
+    private static SaBatchProcessor processor(SaBundle bundle, SaBatchReport report, ExecutorService executor, BooleanSupplier cancelled) {
+        SaBatchProcessor result = new SaBatchProcessor(new ISaBatchInformation() {
+            @Override
+            public boolean open() {
+                return true;
+            }
+
+            @Override
+            public Iterator<ISaBundle> start() {
+                return Collections.<ISaBundle>singletonList(bundle).iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        }, null, executor);
+        result.setReport(report);
+        result.setCancelled(cancelled);
+        return result;
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        boolean interrupted = false;
+        long end = System.currentTimeMillis() + millis;
+        for (long wait = millis; wait > 0; wait = end - System.currentTimeMillis()) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static ec.jwsacruncher.batch.SaItemOutcome.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SaBatchReportTest {
+
+    @Test
+    public void testReport(@TempDir Path temp) throws IOException {
+        SaBatchReport report = new SaBatchReport();
+        assertThat(report.getFailureRate()).isEqualTo(0);
+
+        report.add(SaItemOutcome.of("sa_1", "a", PROCESSED, "TramoSeats", 10, null, null));
+        report.add(SaItemOutcome.of("sa_1", "b", FAILED, "X13", 5, "java.lang.IllegalArgumentException", "bad;\nvalue"));
+        report.add(SaItemOutcome.of("sa_1", "c", TIMEOUT, "X13", 60000, null, null));
+        report.add(SaItemOutcome.of("sa_1", "c", FALLBACK, "X13", 20, null, null));
+
+        assertThat(report.size()).isEqualTo(4);
+        assertThat(report.count()).containsEntry(PROCESSED, 1).containsEntry(FAILED, 1).containsEntry(TIMEOUT, 1).containsEntry(FALLBACK, 1);
+        assertThat(report.getFailureRate()).isEqualTo(50);
+        assertThat(report.getSummary()).isEqualTo("4 items, 1 processed, 1 failed, 1 timeout, 1 fallback");
+
+        Path file = temp.resolve("outcomes.csv");
+        report.write(file);
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8))
+                .hasSize(5)
+                .contains("sa_1;b;FAILED;X13;5;java.lang.IllegalArgumentException;bad, value");
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import com.google.common.base.Stopwatch;
+import ec.satoolkit.ISaSpecification;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.TsFactory;
+import ec.tss.sa.ISaOutputFactory;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import ec.tss.sa.documents.SaDocument;
+import ec.tss.sa.output.BasicConfiguration;
+import ec.tss.sa.output.CsvMatrixOutputConfiguration;
+import ec.tss.sa.output.CsvMatrixOutputFactory;
+import ec.tss.sa.output.CsvOutputConfiguration;
+import ec.tss.sa.output.CsvOutputFactory;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the flush of a bundle when every output builds its own documents
+ * (previous behaviour) and when the documents are shared by the outputs.
+ * Usage: SaBundleBenchmark [items] [runs]
+ */
+public final class SaBundleBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nitems = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int nruns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+        File folder = Files.createTempDirectory("flush").toFile();
+        List<ISaOutputFactory> outputs = createOutputs(folder);
+        List<SaItem> items = createItems(nitems);
+        items.forEach(SaItem::process);
+
+        // warm-up
+        flushPerOutput(outputs, items);
+        flushShared(outputs, items);
+
+        long perOutput = 0, shared = 0;
+        for (int i = 0; i < nruns; ++i) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            flushPerOutput(outputs, items);
+            perOutput += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            stopwatch.reset().start();
+            flushShared(outputs, items);
+            shared += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        }
+        System.out.println(nitems + " items, " + outputs.size() + " outputs, " + nruns + " runs");
+        System.out.println("documents by output: " + perOutput / nruns + " ms/flush");
+        System.out.println("shared documents:    " + shared / nruns + " ms/flush");
+    }
+
+    private static void flushPerOutput(List<ISaOutputFactory> outputs, List<SaItem> items) {
+        for (ISaOutputFactory fac : outputs) {
+            SaBundle.write(fac, "bench", SaBundle.toDocuments(items), null);
+        }
+    }
+
+    private static void flushShared(List<ISaOutputFactory> outputs, List<SaItem> items) {
+        List<SaDocument<ISaSpecification>> docs = SaBundle.toDocuments(items);
+        for (ISaOutputFactory fac : outputs) {
+            SaBundle.write(fac, "bench", docs, null);
+        }
+    }
+
+    private static List<ISaOutputFactory> createOutputs(File folder) {
+        CsvOutputConfiguration csv = new CsvOutputConfiguration();
+        csv.setFolder(folder);
+        csv.setSeries(BasicConfiguration.allSaSeries(true));
+        CsvMatrixOutputConfiguration matrix = new CsvMatrixOutputConfiguration();
+        matrix.setFolder(folder);
+        matrix.setItems(BasicConfiguration.allSaDetails(true));
+        return Arrays.asList(new CsvOutputFactory(csv), new CsvMatrixOutputFactory(matrix));
+    }
+
+    private static List<SaItem> createItems(int n) {
+        Random rnd = new Random(0);
+        List<SaItem> result = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            double[] values = new double[240];
+            double level = 100;
+            for (int j = 0; j < values.length; ++j) {
+                level += rnd.nextGaussian();
+                values[j] = level + 10 * Math.sin(j * Math.PI / 6) + rnd.nextGaussian();
+            }
+            TsData data = new TsData(new TsPeriod(TsFrequency.Monthly, 2000, 0), values, false);
+            result.add(new SaItem(TramoSeatsSpecification.RSAfull, TsFactory.instance.createTs("s" + i, null, data)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.batch;
+
+import _test.TestItems;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.sa.ISaOutputFactory;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import ec.tss.sa.output.CsvMatrixOutputConfiguration;
+import ec.tss.sa.output.CsvMatrixOutputFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingMatrixOutputTest {
+
+    @BeforeAll
+    public static void loadFactories() {
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+    }
+
+    @Test
+    public void testSameAsMatrixOutput(@TempDir Path temp) throws IOException {
+        Path expected = temp.resolve("expected"), actual = temp.resolve("actual");
+        CsvMatrixOutputConfiguration config = new CsvMatrixOutputConfiguration();
+        config.setFolder(expected.toFile());
+        process(Collections.singletonList(new CsvMatrixOutputFactory(config)), null, null);
+        try (StreamingMatrixOutput output = new StreamingMatrixOutput(actual.toFile(), config.getFileName(), config.getItems())) {
+            process(Collections.emptyList(), output, null);
+        }
+
+        for (String bundle : new String[]{"mp_1", "mp_2"}) {
+            Path file = actual.resolve(bundle).resolve(config.getFileName() + ".csv");
+            assertThat(file).exists();
+            assertThat(Files.readAllLines(file)).isEqualTo(Files.readAllLines(expected.resolve(bundle).resolve(config.getFileName() + ".csv")));
+        }
+    }
+
+    @Test
+    public void testResume(@TempDir Path temp) throws IOException {
+        CsvMatrixOutputConfiguration config = new CsvMatrixOutputConfiguration();
+        Path restored = temp.resolve("mp_1").resolve(config.getFileName() + ".csv");
+        Files.createDirectories(restored.getParent());
+        Files.write(restored, Arrays.asList("previous run"));
+        ISaBundleJournal journal = new ISaBundleJournal() {
+            @Override
+            public boolean restore(ISaBundle bundle) {
+                return bundle.getName().equals("mp_1");
+            }
+
+            @Override
+            public void store(ISaBundle bundle) {
+            }
+        };
+        try (StreamingMatrixOutput output = new StreamingMatrixOutput(temp.toFile(), config.getFileName(), config.getItems())) {
+            process(Collections.emptyList(), output, journal);
+        }
+
+        // the matrix of the restored bundle is kept
+        assertThat(Files.readAllLines(restored)).containsExactly("previous run");
+        List<String> lines = Files.readAllLines(temp.resolve("mp_2").resolve(config.getFileName() + ".csv"));
+        assertThat(lines.get(lines.size() - 1)).startsWith("c");
+        assertThat(lines).noneMatch(o -> o.startsWith("a") || o.startsWith("b"));
+    }
+
+    private static void process(List<ISaOutputFactory> outputs, ISaItemListener listener, ISaBundleJournal journal) {
+        SaBatchInformation info = new SaBatchInformation(2);
+        info.setName("mp");
+        info.setItems(Arrays.asList(item("a"), item("b"), item("c")));
+        info.setOutputs(outputs);
+        SaBatchProcessor processor = new SaBatchProcessor(info, null);
+        processor.setItemListener(listener);
+        processor.setJournal(journal);
+        assertThat(processor.process()).isTrue();
+    }
+
+    private static SaItem item(String name) {
+        // the rows of the matrix differ from one item to another
+        return TestItems.item(name, TramoSeatsSpecification.RSA0, TestItems.data(TestItems.values(120, name.charAt(0))));
+    }
+}
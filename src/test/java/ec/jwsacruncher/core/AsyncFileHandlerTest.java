@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncFileHandlerTest {
+
+    @Test
+    public void testPublish(@TempDir Path temp) throws IOException {
+        Path file = temp.resolve("test.log");
+        AsyncFileHandler handler = new AsyncFileHandler(file.toString(), 0, 1, false, 100, 60000);
+        for (int i = 0; i < 10; ++i) {
+            handler.publish(record("repeated"));
+        }
+        handler.publish(record("other"));
+        handler.close();
+
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertThat(content)
+                .contains("other")
+                .contains("Previous message repeated 9 times: repeated");
+        assertThat(content.split("INFO: repeated", -1)).hasSize(2);
+    }
+
+    @Test
+    public void testDistinctRecords(@TempDir Path temp) throws IOException {
+        Path file = temp.resolve("test.log");
+        AsyncFileHandler handler = new AsyncFileHandler(file.toString(), 0, 1, false, 100, 60000);
+        // same unformatted message, different parameters or exceptions
+        for (int i = 0; i < 4; ++i) {
+            LogRecord record = record("item {0}");
+            record.setParameters(new Object[]{"s" + i % 3});
+            handler.publish(record);
+        }
+        handler.publish(thrown(new IllegalStateException("first")));
+        handler.publish(thrown(new IllegalStateException("second")));
+        handler.publish(thrown(new IllegalArgumentException("first")));
+        handler.publish(thrown(new IllegalArgumentException("first")));
+        handler.close();
+
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertThat(content)
+                .contains("item s0")
+                .contains("item s1")
+                .contains("item s2")
+                .contains("Previous message repeated 1 times: item s0")
+                .contains("java.lang.IllegalStateException: first")
+                .contains("java.lang.IllegalStateException: second")
+                .contains("Previous message repeated 1 times: java.lang.IllegalArgumentException: first");
+    }
+
+    @Test
+    public void testEviction(@TempDir Path temp) throws IOException {
+        Path file = temp.resolve("test.log");
+        AsyncFileHandler handler = new AsyncFileHandler(file.toString(), 0, 1, false, 4096, 60000);
+        handler.publish(record("repeated"));
+        handler.publish(record("repeated"));
+        // fills the table of the recent messages
+        for (int i = 0; i < 1024; ++i) {
+            handler.publish(record("message " + i));
+        }
+        handler.close();
+
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertThat(content).contains("Previous message repeated 1 times: repeated");
+    }
+
+    @Test
+    public void testBoundedBuffer(@TempDir Path temp) throws IOException {
+        Path file = temp.resolve("test.log");
+        AsyncFileHandler handler = new AsyncFileHandler(file.toString(), 0, 1, false, 1, 0);
+        for (int i = 0; i < 1000; ++i) {
+            handler.publish(record("message " + i));
+        }
+        handler.close();
+
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        // the records that don't fit in the buffer are dropped, not waited for
+        assertThat(content).contains("message 0");
+        assertThat(content.contains("message 999") || content.contains("log records dropped")).isTrue();
+    }
+
+    private static LogRecord thrown(Throwable ex) {
+        LogRecord result = new LogRecord(Level.SEVERE, null);
+        result.setLoggerName("test");
+        result.setThrown(ex);
+        return result;
+    }
+
+    private static LogRecord record(String msg) {
+        LogRecord result = new LogRecord(Level.INFO, msg);
+        result.setLoggerName("test");
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import com.google.common.base.Stopwatch;
+import ec.demetra.workspace.file.FileWorkspace;
+import ec.tstoolkit.algorithm.ProcessingContext;
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.timeseries.calendars.GregorianCalendarManager;
+import ec.tstoolkit.timeseries.calendars.IGregorianCalendarProvider;
+import ec.tstoolkit.timeseries.calendars.TradingDaysType;
+import ec.tstoolkit.timeseries.simplets.TsDomain;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the generation of the calendar regressors of many items without
+ * and with the shared calendar cache. The calendars are those of the given
+ * workspace (typically national calendars) or the default calendar.
+ * Usage: CalendarCacheBenchmark [workspace] [items] [runs]
+ */
+public final class CalendarCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nitems = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int nruns = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ProcessingContext context = new ProcessingContext();
+        if (args.length > 0) {
+            try (FileWorkspace ws = FileWorkspace.open(Paths.get(args[0]))) {
+                FileRepository.loadAllCalendars(ws, context);
+            }
+        }
+        GregorianCalendarManager manager = context.getGregorianCalendars();
+        List<TsDomain> domains = Arrays.asList(
+                new TsDomain(new TsPeriod(TsFrequency.Monthly, 1995, 0), 300),
+                new TsDomain(new TsPeriod(TsFrequency.Quarterly, 1995, 0), 100));
+
+        // warm-up
+        generate(manager, domains, nitems, null);
+        generate(manager, domains, nitems, new CalendarCache(10000000));
+
+        long direct = 0, cached = 0;
+        for (int i = 0; i < nruns; ++i) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            generate(manager, domains, nitems, null);
+            direct += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            stopwatch.reset().start();
+            generate(manager, domains, nitems, new CalendarCache(10000000));
+            cached += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        }
+        int ncalendars = 0;
+        for (String name : manager.getNames()) {
+            ++ncalendars;
+        }
+        System.out.println(ncalendars + " calendars, " + nitems + " items, " + nruns + " runs");
+        System.out.println("regressors generated by item: " + direct / nruns + " ms/run");
+        System.out.println("shared calendar cache:        " + cached / nruns + " ms/run");
+    }
+
+    /**
+     * Generates the trading days and working days regressors of every item,
+     * for every calendar and domain (as the regression variables of the items
+     * do).
+     */
+    private static void generate(GregorianCalendarManager manager, List<TsDomain> domains, int nitems, CalendarCache cache) {
+        List<IGregorianCalendarProvider> calendars = new ArrayList<>();
+        for (String name : manager.getNames()) {
+            calendars.add(cache != null ? cache.wrap(name, manager.get(name)) : manager.get(name));
+        }
+        for (int i = 0; i < nitems; ++i) {
+            IGregorianCalendarProvider calendar = calendars.get(i % calendars.size());
+            TsDomain domain = domains.get(i % domains.size());
+            for (TradingDaysType type : new TradingDaysType[]{TradingDaysType.TradingDays, TradingDaysType.WorkingDays}) {
+                int n = calendar.count(type);
+                List<DataBlock> buffer = new ArrayList<>(n);
+                for (int j = 0; j < n; ++j) {
+                    buffer.add(new DataBlock(domain.getLength()));
+                }
+                calendar.calendarData(type, domain, buffer, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import _test.TestItems;
+import ec.satoolkit.algorithm.implementation.TramoSeatsProcessingFactory;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tstoolkit.algorithm.CompositeResults;
+import ec.tstoolkit.algorithm.ProcessingContext;
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.timeseries.calendars.GregorianCalendarManager;
+import ec.tstoolkit.timeseries.calendars.IGregorianCalendarProvider;
+import ec.tstoolkit.timeseries.calendars.TradingDaysType;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsDomain;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CalendarCacheTest {
+
+    @Test
+    public void testRegressors() {
+        IGregorianCalendarProvider calendar = defaultCalendar();
+        CalendarCache cache = new CalendarCache(1000000);
+        IGregorianCalendarProvider cached = cache.wrap("cal", calendar);
+        assertThat(cache.wrap("cal", cached)).isSameAs(cached);
+
+        TsDomain domain = new TsDomain(new TsPeriod(TsFrequency.Monthly, 1995, 0), 300);
+        for (TradingDaysType type : new TradingDaysType[]{TradingDaysType.TradingDays, TradingDaysType.WorkingDays}) {
+            double[][] expected = regressors(calendar, type, domain);
+            assertThat(regressors(cached, type, domain)).isEqualTo(expected);
+            // served from the cache
+            assertThat(regressors(cached, type, domain)).isEqualTo(expected);
+        }
+        assertThat(cache.getStats().hitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testResults() {
+        CalendarCache cache = new CalendarCache(1000000);
+        ProcessingContext context = new ProcessingContext();
+        GregorianCalendarManager manager = context.getGregorianCalendars();
+        manager.set("plain", defaultCalendar());
+        manager.set("cached", cache.wrap("cached", defaultCalendar()));
+
+        TsData data = data();
+        CompositeResults expected = TramoSeatsProcessingFactory.process(data, spec("plain"), context);
+        CompositeResults actual = TramoSeatsProcessingFactory.process(data, spec("cached"), context);
+        assertThat(actual.getData("sa", TsData.class)).isNotNull().isEqualTo(expected.getData("sa", TsData.class));
+        assertThat(actual.getData("regression.ntd", Integer.class)).isEqualTo(expected.getData("regression.ntd", Integer.class));
+    }
+
+    private static IGregorianCalendarProvider defaultCalendar() {
+        GregorianCalendarManager manager = new GregorianCalendarManager();
+        return manager.get(manager.getNames().iterator().next());
+    }
+
+    private static TramoSeatsSpecification spec(String calendar) {
+        TramoSeatsSpecification result = TramoSeatsSpecification.RSA5.clone();
+        result.getTramoSpecification().getRegression().getCalendar().getTradingDays().setHolidays(calendar);
+        return result;
+    }
+
+    private static double[][] regressors(IGregorianCalendarProvider calendar, TradingDaysType type, TsDomain domain) {
+        int n = calendar.count(type);
+        List<DataBlock> buffer = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            buffer.add(new DataBlock(domain.getLength()));
+        }
+        calendar.calendarData(type, domain, buffer, 0);
+        double[][] result = new double[n][];
+        for (int i = 0; i < n; ++i) {
+            result[i] = buffer.get(i).getData();
+        }
+        return result;
+    }
+
+    private static TsData data() {
+        double[] values = TestItems.values(180);
+        for (int i = 3; i < values.length; i += 12) {
+            values[i] += 4;
+        }
+        return TestItems.data(values);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import _test.TestItems;
+import ec.jwsacruncher.batch.ISaBundle;
+import ec.jwsacruncher.batch.ISaBundleJournal;
+import ec.jwsacruncher.batch.SaBundle;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import ec.tss.sa.SaProcessing;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ServiceLoader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CheckpointTest {
+
+    @BeforeAll
+    public static void loadFactories() {
+        // the specifications of the stored items are read through the processing factories
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+    }
+
+    @Test
+    public void testStoreRestore(@TempDir Path temp) {
+        Checkpoint checkpoint = new Checkpoint(temp);
+        store(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSA0));
+
+        SaItem a = TestItems.item("a", TramoSeatsSpecification.RSA0), b = TestItems.item("b", TramoSeatsSpecification.RSA0);
+        SaProcessing processing = TestItems.processing(a, b);
+        assertThat(checkpoint.getJournal("mp", processing).restore(new SaBundle("mp_1", Arrays.asList(a, b)))).isTrue();
+        assertThat(processing).hasSize(2).doesNotContain(a, b);
+        assertThat(processing).extracting(o -> o.getTs().getName()).containsExactly("a", "b");
+
+        // other bundles are not restored
+        assertThat(checkpoint.getJournal("mp", TestItems.processing(a, b)).restore(new SaBundle("mp_2", Arrays.asList(a, b)))).isFalse();
+    }
+
+    @Test
+    public void testChangedWorkspace(@TempDir Path temp) {
+        Checkpoint checkpoint = new Checkpoint(temp);
+        store(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSA0));
+
+        // other series
+        assertNotRestored(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("c", TramoSeatsSpecification.RSA0));
+        // other specification
+        assertNotRestored(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSAfull));
+        // other number of series
+        assertNotRestored(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0));
+    }
+
+    @Test
+    public void testCorruptJournal(@TempDir Path temp) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(temp);
+        store(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSA0));
+        Path file = temp.resolve("mp").resolve("mp_1.xml");
+        byte[] content = Files.readAllBytes(file);
+
+        // partial write
+        Files.write(file, Arrays.copyOf(content, content.length / 2));
+        assertNotRestored(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSA0));
+
+        // garbage
+        Files.write(file, "garbage".getBytes("UTF-8"));
+        assertNotRestored(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSA0));
+
+        // interrupted store: only the temporary file exists
+        Files.move(file, file.resolveSibling("mp_1.xml.tmp"));
+        Files.write(file.resolveSibling("mp_1.xml.tmp"), content);
+        assertNotRestored(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0), TestItems.item("b", TramoSeatsSpecification.RSA0));
+    }
+
+    @Test
+    public void testStoreWithoutRestore(@TempDir Path temp) {
+        Checkpoint checkpoint = new Checkpoint(temp);
+        SaItem a = TestItems.item("a", TramoSeatsSpecification.RSA0);
+        ISaBundle bundle = new SaBundle("mp_1", Arrays.asList(a));
+        // the items before the estimation are unknown
+        checkpoint.getJournal("mp", TestItems.processing(a)).store(bundle);
+        assertThat(temp.resolve("mp").resolve("mp_1.xml")).doesNotExist();
+    }
+
+    @Test
+    public void testDone(@TempDir Path temp) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(temp);
+        store(checkpoint, TestItems.item("a", TramoSeatsSpecification.RSA0));
+        checkpoint.markDone("mp");
+        checkpoint.markDone("mp 2");
+        assertThat(checkpoint.isDone("mp")).isTrue();
+        assertThat(checkpoint.isDone("mp 2")).isTrue();
+        assertThat(checkpoint.isDone("other")).isFalse();
+
+        checkpoint.clearBundles();
+        assertThat(temp.resolve("mp")).doesNotExist();
+        assertThat(checkpoint.isDone("mp")).isTrue();
+
+        checkpoint.clear();
+        assertThat(checkpoint.isDone("mp")).isFalse();
+    }
+
+    private static void store(Checkpoint checkpoint, SaItem... items) {
+        ISaBundleJournal journal = checkpoint.getJournal("mp", TestItems.processing(items));
+        ISaBundle bundle = new SaBundle("mp_1", Arrays.asList(items));
+        assertThat(journal.restore(bundle)).isFalse();
+        journal.store(bundle);
+    }
+
+    private static void assertNotRestored(Checkpoint checkpoint, SaItem... items) {
+        SaProcessing processing = TestItems.processing(items);
+        assertThat(checkpoint.getJournal("mp", processing).restore(new SaBundle("mp_1", Arrays.asList(items)))).isFalse();
+        assertThat(processing).containsExactly(items);
+    }
+}
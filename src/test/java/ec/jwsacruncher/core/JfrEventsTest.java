@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class JfrEventsTest {
+
+    @Test
+    public void testRecordings(@TempDir Path temp) throws IOException {
+        assertThat(JfrEvents.isEnabled()).isFalse();
+        assertThat(JfrEvents.begin(JfrEvents.Type.QUERY)).isNull();
+
+        Closeable first = start(temp.resolve("first.jfr"));
+        Closeable second = start(temp.resolve("second.jfr"));
+        assertThat(JfrEvents.isEnabled()).isTrue();
+        Object event = JfrEvents.begin(JfrEvents.Type.FLUSH);
+        assertThat(event).isNotNull();
+        JfrEvents.commit(event, "b1", "csv", 10);
+
+        first.close();
+        // closing twice doesn't stop the other recording
+        first.close();
+        assertThat(JfrEvents.isEnabled()).isTrue();
+        second.close();
+        assertThat(JfrEvents.isEnabled()).isFalse();
+        assertThat(JfrEvents.begin(JfrEvents.Type.QUERY)).isNull();
+        assertThat(temp.resolve("second.jfr")).matches(Files::exists);
+
+        // the events are created again for a new recording
+        try (Closeable third = start(temp.resolve("third.jfr"))) {
+            assertThat(JfrEvents.begin(JfrEvents.Type.SAVE)).isNotNull();
+        }
+        assertThat(JfrEvents.isEnabled()).isFalse();
+    }
+
+    private static Closeable start(Path file) {
+        Closeable result = null;
+        try {
+            result = JfrEvents.start(file);
+        } catch (UnsupportedOperationException ex) {
+            // Java 8 runtime
+        }
+        assumeTrue(result != null, "No flight recorder");
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+public class ParallelCompressorTest {
+
+    @Test
+    public void testGzip(@TempDir Path temp) throws IOException {
+        byte[] data = new byte[(5 << 20) / 2];
+        Random rnd = new Random(0);
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) ('0' + rnd.nextInt(10));
+        }
+        Path file = temp.resolve("sa.csv");
+        Files.write(file, data);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Path result = ParallelCompressor.compress(file, Compression.GZIP, executor);
+            assertThat(result.getFileName().toString()).isEqualTo("sa.csv.gz");
+            assertThat(file).doesNotExist();
+            try (InputStream input = new GZIPInputStream(Files.newInputStream(result))) {
+                assertThat(ByteStreams.toByteArray(input)).isEqualTo(data);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParse() {
+        assertThat(Compression.parse(null)).isEqualTo(Compression.NONE);
+        assertThat(Compression.parse("GZIP")).isEqualTo(Compression.GZIP);
+        assertThatIllegalArgumentException().isThrownBy(() -> Compression.parse("lz4"));
+    }
+}
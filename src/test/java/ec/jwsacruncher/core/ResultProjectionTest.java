@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResultProjectionTest {
+
+    @Test
+    public void testOf() {
+        ResultProjection projection = ResultProjection.of(
+                new String[]{"span.start", "diagnostics.seats.seas-var", "diagnostics.out-of-sample.mean", "span.start", " "},
+                new String[]{"sa", "s"});
+        assertThat(projection.getItems()).containsExactly("span.start", "diagnostics.seats.seas-var", "diagnostics.out-of-sample.mean");
+        assertThat(projection.getSeries()).containsExactly("sa", "s");
+        assertThat(projection.getDiagnostics()).containsExactlyInAnyOrder("seats", "out-of-sample");
+        assertThat(projection.isEmpty()).isFalse();
+    }
+
+    @Test
+    public void testDefaults() {
+        ResultProjection projection = ResultProjection.of(null, new String[0]);
+        assertThat(projection.hasItems()).isTrue();
+        assertThat(projection.hasSeries()).isFalse();
+        assertThat(projection.getDiagnostics()).isEmpty();
+
+        assertThat(ResultProjection.of(new String[0], null).isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SaItemFilterTest {
+
+    @Test
+    public void testAll() {
+        assertThat(SaItemFilter.ALL.isItemFilter()).isFalse();
+        assertThat(SaItemFilter.ALL.acceptsProcessing("SAProcessing-1")).isTrue();
+        assertThat(SaItemFilter.ALL.accepts("Series", null, null)).isTrue();
+    }
+
+    @Test
+    public void testProcessings() {
+        SaItemFilter filter = SaItemFilter.of(new String[]{"SAProcessing-1"}, null, null, null);
+        assertThat(filter.isItemFilter()).isFalse();
+        assertThat(filter.acceptsProcessing("SAProcessing-1")).isTrue();
+        assertThat(filter.acceptsProcessing("SAProcessing-2")).isFalse();
+    }
+
+    @Test
+    public void testSeries() {
+        SaItemFilter filter = SaItemFilter.of(null, new String[]{"BE*", "FR_?"}, null, null);
+        assertThat(filter.isItemFilter()).isTrue();
+        assertThat(filter.accepts("BE_total", "JDBC", "1")).isTrue();
+        assertThat(filter.accepts("FR_1", "JDBC", "1")).isTrue();
+        assertThat(filter.accepts("FR_10", "JDBC", "1")).isFalse();
+        assertThat(filter.accepts("B.E", "JDBC", "1")).isFalse();
+        assertThat(filter.accepts(null, "JDBC", "1")).isFalse();
+    }
+
+    @Test
+    public void testSourcesAndMonikers() {
+        SaItemFilter filter = SaItemFilter.of(null, null, new String[]{"JDBC"}, new String[]{"1", "2"});
+        assertThat(filter.accepts("a", "JDBC", "1")).isTrue();
+        assertThat(filter.accepts("a", "XCLPRVDR", "1")).isFalse();
+        assertThat(filter.accepts("a", "JDBC", "3")).isFalse();
+    }
+
+    @Test
+    public void testCompileGlob() {
+        assertThat(SaItemFilter.compileGlob("a.b*").matcher("a.bcd").matches()).isTrue();
+        assertThat(SaItemFilter.compileGlob("a.b*").matcher("axbcd").matches()).isFalse();
+        assertThat(SaItemFilter.compileGlob("(x)?").matcher("(x)1").matches()).isTrue();
+    }
+}
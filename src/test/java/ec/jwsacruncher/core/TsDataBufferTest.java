@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.TsMoniker;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TsDataBufferTest {
+
+    @Test
+    public void testDirect() throws IOException {
+        try (TsDataBuffer buffer = new TsDataBuffer(null)) {
+            testPutGet(buffer);
+        }
+    }
+
+    @Test
+    public void testMapped(@TempDir Path temp) throws IOException {
+        try (TsDataBuffer buffer = new TsDataBuffer(temp)) {
+            testPutGet(buffer);
+        }
+    }
+
+    private static void testPutGet(TsDataBuffer buffer) {
+        TsMoniker m1 = new TsMoniker("JDBC", "1"), m2 = new TsMoniker("JDBC", "2");
+        TsData d1 = new TsData(new TsPeriod(TsFrequency.Monthly, 2000, 0), new double[]{1, 2, 3}, false);
+        TsData d2 = new TsData(new TsPeriod(TsFrequency.Quarterly, 2005, 2), new double[]{4, Double.NaN}, false);
+        buffer.put(m1, d1);
+        buffer.put(m2, d2);
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(buffer.get(m1)).isEqualTo(d1);
+        assertThat(buffer.get(m2)).isEqualTo(d2);
+        assertThat(buffer.get(new TsMoniker("JDBC", "3"))).isNull();
+    }
+}
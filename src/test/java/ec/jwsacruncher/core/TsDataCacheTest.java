@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.ITsProvider;
+import ec.tss.TsInformation;
+import ec.tss.TsInformationType;
+import ec.tss.TsMoniker;
+import ec.tss.tsproviders.DataSet;
+import ec.tss.tsproviders.DataSource;
+import ec.tss.tsproviders.IFileBean;
+import ec.tss.tsproviders.IFileLoader;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TsDataCacheTest {
+
+    private final TsMoniker moniker = new TsMoniker("XCLPRVDR", "file=data.xlsx#sheet=1#series=2");
+    private final TsData data = new TsData(new TsPeriod(TsFrequency.Monthly, 2010, 3), new double[]{1, 2, Double.NaN, 4}, false);
+
+    @Test
+    public void testHits() {
+        AtomicInteger calls = new AtomicInteger();
+        ITsProvider provider = new TsDataCache(1000, null).wrap(provider(ITsProvider.class, calls, null));
+
+        assertThat(get(provider).data).isEqualTo(data);
+        assertThat(get(provider).data).isEqualTo(data);
+        assertThat(calls).hasValue(1);
+
+        provider.clearCache();
+        assertThat(get(provider).data).isEqualTo(data);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void testCopies() {
+        ITsProvider provider = new TsDataCache(1000, null).wrap(provider(ITsProvider.class, new AtomicInteger(), null));
+
+        TsData first = get(provider).data;
+        TsData second = get(provider).data;
+        assertThat(second).isEqualTo(first).isNotSameAs(first);
+        first.set(0, 10);
+        assertThat(get(provider).data).isEqualTo(data);
+    }
+
+    @Test
+    public void testEviction() {
+        AtomicInteger calls = new AtomicInteger();
+        ITsProvider provider = new TsDataCache(0, null).wrap(provider(ITsProvider.class, calls, null));
+
+        get(provider);
+        get(provider);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void testOffHeap(@TempDir Path temp) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        try (TsDataBuffer buffer = new TsDataBuffer(temp)) {
+            ITsProvider provider = new TsDataCache(0, buffer, null).wrap(provider(ITsProvider.class, calls, null));
+
+            get(provider);
+            assertThat(get(provider).data).isEqualTo(data);
+            assertThat(calls).hasValue(1);
+        }
+    }
+
+    @Test
+    public void testClose(@TempDir Path temp) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        TsDataBuffer buffer = new TsDataBuffer(temp);
+        TsDataCache cache = new TsDataCache(0, buffer, null);
+        get(cache.wrap(provider(ITsProvider.class, calls, null)));
+        assertThat(buffer.contains(moniker)).isTrue();
+
+        cache.close();
+        // the mapped files are deleted with their channels
+        assertThat(buffer.size()).isZero();
+        try (Stream<Path> files = Files.list(temp)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    public void testInvalidate(@TempDir Path temp) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        try (TsDataBuffer buffer = new TsDataBuffer(temp)) {
+            TsDataCache cache = new TsDataCache(0, buffer, null);
+            ITsProvider provider = cache.wrap(provider(ITsProvider.class, calls, null));
+
+            get(provider);
+            cache.invalidate(Collections.singleton(moniker));
+            assertThat(buffer.contains(moniker)).isFalse();
+            get(provider);
+            assertThat(calls).hasValue(2);
+        }
+    }
+
+    @Test
+    public void testMaxAge(@TempDir Path temp) {
+        AtomicInteger calls = new AtomicInteger();
+        ITsProvider source = provider(ITsProvider.class, calls, null);
+
+        get(new TsDataCache(1000, new TsDataStore(temp, 3600000)).wrap(source));
+        assertThat(get(new TsDataCache(1000, new TsDataStore(temp, 3600000)).wrap(source)).data).isEqualTo(data);
+        assertThat(calls).hasValue(1);
+
+        get(new TsDataCache(1000, new TsDataStore(temp, 0)).wrap(source));
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void testModifiedFile(@TempDir Path temp) throws IOException {
+        File file = Files.write(temp.resolve("data.xlsx"), new byte[]{1}).toFile();
+        file.setLastModified(100000);
+        AtomicInteger calls = new AtomicInteger();
+        ITsProvider source = provider(IFileLoader.class, calls, file);
+        Path folder = temp.resolve("store");
+
+        get(new TsDataCache(1000, new TsDataStore(folder, 0)).wrap(source));
+        get(new TsDataCache(1000, new TsDataStore(folder, 0)).wrap(source));
+        assertThat(calls).hasValue(1);
+
+        file.setLastModified(200000);
+        get(new TsDataCache(1000, new TsDataStore(folder, 0)).wrap(source));
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void testWrap(@TempDir Path temp) {
+        File file = temp.resolve("data.xlsx").toFile();
+        ITsProvider source = provider(IFileLoader.class, new AtomicInteger(), file);
+        ITsProvider wrapped = new TsDataCache(1000, null).wrap(source);
+
+        assertThat(wrapped).isInstanceOf(IFileLoader.class);
+        assertThat(TsDataCache.unwrap(wrapped)).isSameAs(source);
+        assertThat(TsDataCache.unwrap(source)).isSameAs(source);
+    }
+
+    @Test
+    public void testSnapshot(@TempDir Path temp) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        Path file = temp.resolve("snapshot.bin");
+        TsDataCache recording = new TsDataCache(1000, null);
+        try (TsSnapshot.Writer writer = new TsSnapshot.Writer(file)) {
+            recording.setRecorder(writer);
+            get(recording.wrap(provider(ITsProvider.class, calls, null)));
+            writer.complete();
+        }
+
+        try (TsSnapshot snapshot = TsSnapshot.open(file)) {
+            TsDataCache replaying = new TsDataCache(1000, null);
+            replaying.setSnapshot(snapshot);
+            assertThat(get(replaying.wrap(provider(ITsProvider.class, calls, null))).data).isEqualTo(data);
+            assertThat(calls).hasValue(1);
+        }
+    }
+
+    private TsInformation get(ITsProvider provider) {
+        TsInformation info = new TsInformation("s", moniker, TsInformationType.Data);
+        assertThat(provider.get(info)).isTrue();
+        return info;
+    }
+
+    private ITsProvider provider(Class<? extends ITsProvider> type, AtomicInteger calls, File file) {
+        IFileBean bean = (IFileBean) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{IFileBean.class},
+                (proxy, method, args) -> method.getName().equals("getFile") ? file : null);
+        DataSource dataSource = DataSource.builder("XCLPRVDR", "20111201").build();
+        return (ITsProvider) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "get":
+                    if (args[0] instanceof TsInformation) {
+                        calls.incrementAndGet();
+                        ((TsInformation) args[0]).data = data.clone();
+                        return true;
+                    }
+                    return false;
+                case "getSource":
+                    return "XCLPRVDR";
+                case "toDataSet":
+                    return DataSet.builder(dataSource, DataSet.Kind.SERIES).build();
+                case "decodeBean":
+                    return bean;
+                case "getPaths":
+                    return new File[0];
+                default:
+                    return method.getReturnType() == boolean.class ? false : null;
+            }
+        });
+    }
+}
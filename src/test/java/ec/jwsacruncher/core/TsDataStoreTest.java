@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.TsMoniker;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TsDataStoreTest {
+
+    private final TsMoniker moniker = new TsMoniker("XCLPRVDR", "file=data.xlsx#sheet=1#series=2");
+    private final TsData data = new TsData(new TsPeriod(TsFrequency.Monthly, 2010, 3), new double[]{1, 2, Double.NaN, 4}, false);
+
+    @Test
+    public void testFileSource(@TempDir Path temp) {
+        TsDataStore store = new TsDataStore(temp, 0);
+        assertThat(store.get(moniker, 100)).isNull();
+
+        store.put(moniker, data, 100);
+        assertThat(store.get(moniker, 100)).isEqualTo(data);
+        assertThat(store.get(moniker, 200)).isNull();
+        assertThat(store.get(new TsMoniker("XCLPRVDR", "other"), 100)).isNull();
+    }
+
+    @Test
+    public void testMaxAge(@TempDir Path temp) {
+        store(temp, 0).put(moniker, data, -1);
+        assertThat(store(temp, 0).get(moniker, -1)).isNull();
+        assertThat(store(temp, 60000).get(moniker, -1)).isEqualTo(data);
+    }
+
+    @Test
+    public void testAnonymous(@TempDir Path temp) {
+        TsDataStore store = new TsDataStore(temp, 60000);
+        store.put(new TsMoniker(), data, -1);
+        assertThat(store.get(new TsMoniker(), -1)).isNull();
+    }
+
+    private static TsDataStore store(Path folder, long maxAge) {
+        return new TsDataStore(folder, maxAge);
+    }
+}
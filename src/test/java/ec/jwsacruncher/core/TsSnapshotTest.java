@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import ec.tss.TsMoniker;
+import ec.tstoolkit.timeseries.simplets.TsData;
+import ec.tstoolkit.timeseries.simplets.TsFrequency;
+import ec.tstoolkit.timeseries.simplets.TsPeriod;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+public class TsSnapshotTest {
+
+    @Test
+    public void testWriteRead(@TempDir Path temp) throws IOException {
+        TsMoniker m1 = new TsMoniker("JDBC", "table=x#series=é1"), m2 = new TsMoniker("SDMX", "M.BE.1");
+        TsData d1 = new TsData(new TsPeriod(TsFrequency.Monthly, 2000, 0), new double[]{1, 2, 3}, false);
+        TsData d2 = new TsData(new TsPeriod(TsFrequency.Quarterly, 2005, 2), new double[]{4, Double.NaN}, false);
+
+        Path file = temp.resolve("ws.snapshot");
+        try (TsSnapshot.Writer writer = new TsSnapshot.Writer(file)) {
+            writer.add(m1, d1);
+            writer.add(m2, d2);
+            writer.add(m1, d2);
+            writer.add(new TsMoniker(), d2);
+            assertThat(writer.size()).isEqualTo(2);
+            writer.complete();
+        }
+
+        try (TsSnapshot snapshot = TsSnapshot.open(file)) {
+            assertThat(snapshot.size()).isEqualTo(2);
+            assertThat(snapshot.get(m1)).isEqualTo(d1);
+            assertThat(snapshot.get(m2)).isEqualTo(d2);
+            assertThat(snapshot.get(new TsMoniker("JDBC", "other"))).isNull();
+        }
+    }
+
+    @Test
+    public void testIncomplete(@TempDir Path temp) throws IOException {
+        TsMoniker m1 = new TsMoniker("JDBC", "s1"), m2 = new TsMoniker("JDBC", "s2");
+        TsData data = new TsData(new TsPeriod(TsFrequency.Monthly, 2000, 0), new double[]{1, 2, 3}, false);
+        Path file = temp.resolve("ws.snapshot");
+        try (TsSnapshot.Writer writer = new TsSnapshot.Writer(file)) {
+            writer.add(m1, data);
+            writer.add(m2, data);
+            writer.complete();
+        }
+
+        // a partial run doesn't replace the snapshot
+        try (TsSnapshot.Writer writer = new TsSnapshot.Writer(file)) {
+            writer.add(m1, data);
+        }
+        assertThat(temp.resolve("ws.snapshot.tmp")).doesNotExist();
+        try (TsSnapshot snapshot = TsSnapshot.open(file)) {
+            assertThat(snapshot.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testTruncated(@TempDir Path temp) throws IOException {
+        TsData data = new TsData(new TsPeriod(TsFrequency.Monthly, 2000, 0), new double[]{1, 2, 3}, false);
+        Path file = temp.resolve("ws.snapshot");
+        try (TsSnapshot.Writer writer = new TsSnapshot.Writer(file)) {
+            writer.add(new TsMoniker("JDBC", "s1"), data);
+            writer.complete();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        for (int n : new int[]{bytes.length - 3, 20, 10}) {
+            Path truncated = temp.resolve("truncated" + n);
+            Files.write(truncated, Arrays.copyOf(bytes, n));
+            assertThatIOException().isThrownBy(() -> TsSnapshot.open(truncated));
+        }
+    }
+}
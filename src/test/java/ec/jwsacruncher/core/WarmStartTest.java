@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.core;
+
+import _test.TestItems;
+import ec.satoolkit.tramoseats.TramoSeatsSpecification;
+import ec.tss.sa.ISaProcessingFactory;
+import ec.tss.sa.SaItem;
+import ec.tss.sa.SaManager;
+import ec.tstoolkit.Parameter;
+import ec.tstoolkit.ParameterType;
+import ec.tstoolkit.algorithm.CompositeResults;
+import java.util.ServiceLoader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WarmStartTest {
+
+    @BeforeAll
+    public static void loadFactories() {
+        ServiceLoader.load(ISaProcessingFactory.class).forEach(SaManager.instance::add);
+    }
+
+    @Test
+    public void testInitial() {
+        Parameter[] previous = {new Parameter(-0.5, ParameterType.Estimated), new Parameter(0.3, ParameterType.Estimated)};
+        Parameter[] current = {new Parameter(), new Parameter(0.1, ParameterType.Fixed)};
+
+        Parameter[] result = WarmStart.initial(previous, current);
+        assertThat(result).hasSize(2);
+        assertThat(result[0].getType()).isEqualTo(ParameterType.Initial);
+        assertThat(result[0].getValue()).isEqualTo(-0.5);
+        assertThat(result[1]).isSameAs(current[1]);
+    }
+
+    @Test
+    public void testDifferentOrders() {
+        Parameter[] previous = {new Parameter(-0.5, ParameterType.Estimated)};
+        assertThat(WarmStart.initial(previous, new Parameter[2])).isNull();
+        assertThat(WarmStart.initial(null, new Parameter[1])).isNull();
+        assertThat(WarmStart.initial(null, null)).isEmpty();
+    }
+
+    @Test
+    public void testConvergence() {
+        CompositeResults results = item(120).process();
+        assertThat(WarmStart.isConverged(results)).isTrue();
+        assertThat(WarmStart.isConverged(null)).isFalse();
+        assertThat(WarmStart.isBetter(results, null)).isTrue();
+        assertThat(WarmStart.isBetter(null, results)).isFalse();
+        assertThat(WarmStart.isBetter(results, results)).isFalse();
+    }
+
+    @Test
+    public void testRestore() {
+        SaItem previous = item(108);
+        previous.process();
+        SaItem cold = item(120);
+        SaItem warm = WarmStart.of(previous, cold);
+        assertThat(warm).isNotNull();
+        assertThat(warm.getEstimationSpecification()).isNotEqualTo(cold.getEstimationSpecification());
+
+        CompositeResults results = warm.process();
+        assertThat(results).isNotNull();
+        WarmStart.restore(warm, cold);
+        // the original specification is saved, with the results of the warm start
+        assertThat(warm.getEstimationSpecification()).isEqualTo(cold.getEstimationSpecification());
+        assertThat(warm.process()).isSameAs(results);
+    }
+
+    private static SaItem item(int n) {
+        return TestItems.item("s", TramoSeatsSpecification.RSA0.clone(), TestItems.data(n));
+    }
+}
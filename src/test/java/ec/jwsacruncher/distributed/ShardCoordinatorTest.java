@@ -0,0 +1,289 @@
+/*
+ * Copyright 2018 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.jwsacruncher.distributed;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardCoordinatorTest {
+
+    @Test
+    public void testSplit() {
+        assertThat(Shard.split("mp", 5, 2))
+                .containsExactly(
+                        new Shard("mp", "mp_1", new int[]{0, 1}),
+                        new Shard("mp", "mp_2", new int[]{2, 3}),
+                        new Shard("mp", "mp_3", new int[]{4}));
+
+        assertThat(Shard.split("mp", 0, 2)).isEmpty();
+
+        // same names as the bundles of a local crunch
+        assertThat(Shard.split("mp", 2, 2))
+                .containsExactly(new Shard("mp", "mp", new int[]{0, 1}));
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        try (ShardWorker w1 = new ShardWorker(0, ShardCoordinatorTest::echo);
+                ShardWorker w2 = new ShardWorker(0, ShardCoordinatorTest::echo)) {
+            start(w1);
+            start(w2);
+
+            Map<String, byte[]> results = new ConcurrentHashMap<>();
+            List<Shard> failed = new ShardCoordinator(Arrays.asList(addressOf(w1), addressOf(w2)), null)
+                    .run(Shard.split("mp", 10, 3), (shard, result) -> results.put(shard.getName(), result));
+
+            assertThat(failed).isEmpty();
+            assertThat(results).containsOnlyKeys("mp_1", "mp_2", "mp_3", "mp_4");
+            assertThat(results.get("mp_4")).containsExactly(9);
+        }
+    }
+
+    @Test
+    public void testRunWithLostWorker() throws IOException {
+        InetSocketAddress lost;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            lost = new InetSocketAddress(InetAddress.getLoopbackAddress(), closed.getLocalPort());
+        }
+        try (ShardWorker w1 = new ShardWorker(0, ShardCoordinatorTest::echo)) {
+            start(w1);
+
+            Map<String, byte[]> results = new ConcurrentHashMap<>();
+            List<Shard> failed = new ShardCoordinator(Arrays.asList(lost, addressOf(w1)), null)
+                    .run(Shard.split("mp", 10, 3), (shard, result) -> results.put(shard.getName(), result));
+
+            assertThat(failed).isEmpty();
+            assertThat(results).containsOnlyKeys("mp_1", "mp_2", "mp_3", "mp_4");
+        }
+    }
+
+    @Test
+    public void testRunWithFailingShard() throws IOException {
+        ShardWorker.Handler handler = (session, shard) -> {
+            if (shard.getName().equals("mp_2")) {
+                throw new IllegalStateException("boom");
+            }
+            return echo(session, shard);
+        };
+        try (ShardWorker w1 = new ShardWorker(0, handler)) {
+            start(w1);
+
+            Map<String, byte[]> results = new ConcurrentHashMap<>();
+            List<Shard> failed = new ShardCoordinator(Arrays.asList(addressOf(w1)), null)
+                    .run(Shard.split("mp", 10, 3), (shard, result) -> results.put(shard.getName(), result));
+
+            assertThat(failed).extracting(Shard::getName).containsExactly("mp_2");
+            assertThat(results).containsOnlyKeys("mp_1", "mp_3", "mp_4");
+        }
+    }
+
+    @Test
+    public void testRunWithHangingWorker() throws IOException {
+        // the connections are accepted by the system but never answered
+        try (ServerSocket hanging = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+                ShardWorker w1 = new ShardWorker(0, ShardCoordinatorTest::echo)) {
+            start(w1);
+
+            Map<String, byte[]> results = new ConcurrentHashMap<>();
+            ShardCoordinator coordinator = new ShardCoordinator(Arrays.asList(addressOf(hanging.getLocalPort()), addressOf(w1)), null);
+            coordinator.setReadTimeout(500);
+            List<Shard> failed = coordinator.run(Shard.split("mp", 10, 3), (shard, result) -> results.put(shard.getName(), result));
+
+            assertThat(failed).isEmpty();
+            assertThat(results).containsOnlyKeys("mp_1", "mp_2", "mp_3", "mp_4");
+        }
+    }
+
+    @Test
+    public void testRunWithFailingMerge() throws IOException {
+        try (ShardWorker w1 = new ShardWorker(0, ShardCoordinatorTest::echo)) {
+            start(w1);
+
+            Map<String, byte[]> results = new ConcurrentHashMap<>();
+            List<Shard> failed = new ShardCoordinator(Arrays.asList(addressOf(w1)), null)
+                    .run(Shard.split("mp", 10, 3), (shard, result) -> {
+                        if (shard.getName().equals("mp_3")) {
+                            throw new IllegalStateException("boom");
+                        }
+                        results.put(shard.getName(), result);
+                    });
+
+            assertThat(failed).extracting(Shard::getName).containsExactly("mp_3");
+            assertThat(results).containsOnlyKeys("mp_1", "mp_2", "mp_4");
+        }
+    }
+
+    @Test
+    public void testToken() throws IOException {
+        try (ShardWorker w1 = new ShardWorker(InetAddress.getLoopbackAddress(), 0, "secret", ShardCoordinatorTest::echo)) {
+            start(w1);
+
+            List<Shard> shards = Shard.split("mp", 4, 2);
+            List<Shard> failed = new ShardCoordinator(Arrays.asList(addressOf(w1)), "wrong", null).run(shards, (shard, result) -> {
+            });
+            assertThat(failed).hasSize(2);
+
+            Map<String, byte[]> results = new ConcurrentHashMap<>();
+            failed = new ShardCoordinator(Arrays.asList(addressOf(w1)), "secret", null).run(shards, (shard, result) -> results.put(shard.getName(), result));
+            assertThat(failed).isEmpty();
+            assertThat(results).containsOnlyKeys("mp_1", "mp_2");
+        }
+    }
+
+    @Test
+    public void testSession() throws IOException {
+        List<String> sessions = new CopyOnWriteArrayList<>();
+        try (ShardWorker w1 = new ShardWorker(0, (session, shard) -> {
+            sessions.add(session);
+            return echo(session, shard);
+        })) {
+            start(w1);
+
+            ShardCoordinator coordinator = new ShardCoordinator(Arrays.asList(addressOf(w1)), null);
+            coordinator.run(Shard.split("mp", 4, 2), (shard, result) -> {
+            });
+            coordinator.run(Shard.split("mp", 4, 2), (shard, result) -> {
+            });
+
+            assertThat(sessions).hasSize(4);
+            assertThat(sessions.get(0)).isEqualTo(sessions.get(1)).isNotEqualTo(sessions.get(2));
+            assertThat(sessions.get(2)).isEqualTo(sessions.get(3));
+        }
+    }
+
+    @Test
+    public void testCommit(@TempDir Path temp) throws IOException {
+        File output = temp.toFile();
+        try (ShardWorker w1 = new ShardWorker(0, (session, shard) -> write(output, shard, "w1"))) {
+            start(w1);
+
+            List<Shard> failed = new ShardCoordinator(Arrays.asList(addressOf(w1)), null)
+                    .run(Shard.split("mp", 6, 2), (shard, result) -> {
+                        if (shard.getName().equals("mp_2")) {
+                            throw new IllegalStateException("boom");
+                        }
+                    });
+
+            assertThat(failed).extracting(Shard::getName).containsExactly("mp_2");
+            // the outputs of a rejected result are discarded
+            assertThat(temp.resolve("mp_1").resolve("series.csv")).hasContent("w1");
+            assertThat(temp.resolve("mp_2")).doesNotExist();
+            assertThat(temp.resolve("mp_3").resolve("series.csv")).hasContent("w1");
+            assertThat(temp.resolve(ShardOutput.ATTEMPTS).toFile().list()).isEmpty();
+        }
+    }
+
+    @Test
+    public void testLostWorkerDoesNotCommit(@TempDir Path temp) throws IOException, InterruptedException {
+        File output = temp.toFile();
+        CountDownLatch discarded = new CountDownLatch(1);
+        // the worker is still busy when the coordinator gives up on it
+        try (ShardWorker w1 = new ShardWorker(0, (session, shard) -> {
+            Thread.sleep(1500);
+            ShardWorker.Attempt attempt = write(output, shard, "w1");
+            return new ShardWorker.Attempt() {
+                @Override
+                public byte[] getResult() {
+                    return attempt.getResult();
+                }
+
+                @Override
+                public void commit() throws IOException {
+                    attempt.commit();
+                }
+
+                @Override
+                public void discard() {
+                    attempt.discard();
+                    discarded.countDown();
+                }
+            };
+        })) {
+            start(w1);
+
+            ShardCoordinator coordinator = new ShardCoordinator(Arrays.asList(addressOf(w1)), null);
+            coordinator.setReadTimeout(500);
+            assertThatThrownBy(() -> coordinator.run(Shard.split("mp", 2, 2), (shard, result) -> {
+            })).isInstanceOf(IOException.class);
+
+            assertThat(discarded.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(temp.resolve("mp")).doesNotExist();
+            assertThat(temp.resolve(ShardOutput.ATTEMPTS).toFile().list()).isEmpty();
+        }
+    }
+
+    private static ShardWorker.Attempt write(File output, Shard shard, String content) throws IOException {
+        ShardOutput attempt = ShardOutput.create(output, shard);
+        Path file = attempt.getFolder().toPath().resolve(shard.getName()).resolve("series.csv");
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return attempt.toAttempt(echo(shard));
+    }
+
+    private static ShardWorker.Attempt echo(String session, Shard shard) {
+        byte[] result = echo(shard);
+        return () -> result;
+    }
+
+    private static byte[] echo(Shard shard) {
+        int[] items = shard.getItems();
+        byte[] result = new byte[items.length];
+        for (int i = 0; i < items.length; ++i) {
+            result[i] = (byte) items[i];
+        }
+        return result;
+    }
+
+    private static InetSocketAddress addressOf(ShardWorker worker) {
+        return addressOf(worker.getPort());
+    }
+
+    private static InetSocketAddress addressOf(int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static void start(ShardWorker worker) {
+        Thread thread = new Thread(() -> {
+            try {
+                worker.serve();
+            } catch (IOException ex) {
+                // closed
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+}